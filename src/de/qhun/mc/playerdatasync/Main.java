@@ -16,12 +16,16 @@
  */
 package de.qhun.mc.playerdatasync;
 
+import de.qhun.mc.playerdatasync.config.AutosaveConfiguration;
+import de.qhun.mc.playerdatasync.config.ExistenceFilterConfiguration;
+import de.qhun.mc.playerdatasync.config.WriteBehindConfiguration;
 import de.qhun.mc.playerdatasync.database.DatabaseAdapter;
 import de.qhun.mc.playerdatasync.database.DatabaseBackendManager;
 import de.qhun.mc.playerdatasync.database.domainmodel.DomainModelSetup;
 import de.qhun.mc.playerdatasync.database.GenericRepository;
 import de.qhun.mc.playerdatasync.events.EventRegister;
 import de.qhun.mc.playerdatasync.modules.ModuleComposer;
+import de.qhun.mc.playerdatasync.modules.ServerClaim;
 import de.qhun.mc.playerdatasync.util.InstanceCache;
 import de.qhun.mc.playerdatasync.util.ServiceProvider;
 import java.util.HashMap;
@@ -46,6 +50,7 @@ public final class Main extends JavaPlugin {
     private DatabaseBackendManager databaseBackendManager;
     private EventRegister eventRegister;
     private DomainModelSetup domainModelSetup;
+    private ServerClaim serverClaim;
 
     /**
      * will be called during plugin creation
@@ -81,13 +86,19 @@ public final class Main extends JavaPlugin {
             this.databaseBackendManager.connectToDatabase();
             DatabaseAdapter adapter = this.databaseBackendManager.getDatabaseAdapter();
             GenericRepository.setDatabaseAdapter(adapter);
+            GenericRepository.setExecutor(this.databaseBackendManager.getExecutor());
+            GenericRepository.setWriteBehindConfiguration(new WriteBehindConfiguration(this));
 
             // instantiate domain model setup
             this.domainModelSetup = new DomainModelSetup(adapter);
 
+            // the claims of this server on the data of its players
+            AutosaveConfiguration autosaveConfiguration = new AutosaveConfiguration(this);
+            this.serverClaim = new ServerClaim(this, autosaveConfiguration);
+
             // enable the module composing
             this.moduleComposer = new ModuleComposer(
-                    this, new DependencyManager(this)
+                    this, new DependencyManager(this), this.eventRegister, this.serverClaim
             );
 
             // Setup DI
@@ -99,6 +110,12 @@ public final class Main extends JavaPlugin {
             // load all modules
             this.moduleComposer.loadAllModules();
 
+            // learn which players have data, the tables exist now
+            GenericRepository.loadExistenceFilters(new ExistenceFilterConfiguration(this));
+
+            // save the online players regularly
+            this.moduleComposer.startAutosave(autosaveConfiguration);
+
             //pm.registerEvents(new PlayerJoinListener(this), this);
         } catch (Exception ex) {
 
@@ -120,6 +137,15 @@ public final class Main extends JavaPlugin {
         // disable all modules
         this.moduleComposer.disableAllModules();
 
+        // wait for all pending database transactions
+        this.databaseBackendManager.shutdownExecutor();
+
+        // write the stores of the last transactions
+        GenericRepository.shutdownPendingStores();
+
+        // report the query timings
+        this.databaseBackendManager.logQueryStatistics();
+
         // disable database connection
         this.databaseBackendManager.getDatabaseAdapter().disconnectFromDatabase();
     }
@@ -154,6 +180,7 @@ public final class Main extends JavaPlugin {
             this.databaseBackendManager,
             this.eventRegister,
             this.domainModelSetup,
+            this.serverClaim,
             new ServiceProvider(this),
             this.databaseBackendManager.getDatabaseAdapter(),
             this
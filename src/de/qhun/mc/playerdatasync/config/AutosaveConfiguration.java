@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.config;
+
+import de.qhun.mc.playerdatasync.Main;
+
+/**
+ * the configuration of the periodic saves of online players
+ *
+ * @author Wrath
+ */
+public class AutosaveConfiguration extends AbstractConfiguration {
+
+    public AutosaveConfiguration(Main plugin) {
+        super(plugin);
+    }
+
+    /**
+     * should online players be saved periodically?
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+
+        return this.getConfiguration().getBoolean("autosave.enabled", true);
+    }
+
+    /**
+     * get the time in ticks until every online player has been saved once
+     *
+     * @return
+     */
+    public long getInterval() {
+
+        return Math.max(10, this.getConfiguration().getLong("autosave.interval", 300)) * 20;
+    }
+
+    /**
+     * get the maximum amount of players that will be saved during one tick
+     *
+     * @return
+     */
+    public int getMaxPlayersPerTick() {
+
+        return Math.max(1, this.getConfiguration().getInt("autosave.max_players_per_tick", 5));
+    }
+
+    /**
+     * get the time in nanoseconds the saves of one tick may take
+     *
+     * @return
+     */
+    public long getTickBudget() {
+
+        return Math.max(1, this.getConfiguration().getLong("autosave.tick_budget", 5)) * 1000000;
+    }
+}
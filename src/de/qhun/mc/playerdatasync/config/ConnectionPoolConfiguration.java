@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.config;
+
+import de.qhun.mc.playerdatasync.Main;
+
+/**
+ * the configuration of the database connection pool
+ *
+ * @author Wrath
+ */
+public class ConnectionPoolConfiguration extends AbstractConfiguration {
+
+    public ConnectionPoolConfiguration(Main plugin) {
+        super(plugin);
+    }
+
+    /**
+     * get the maximum amount of open connections
+     *
+     * @return
+     */
+    public int getMaxPoolSize() {
+
+        return Math.max(1, this.getConfiguration().getInt("database.max_thread_count", 4));
+    }
+
+    /**
+     * get the time in milliseconds an unused connection stays open
+     *
+     * @return
+     */
+    public long getIdleTimeout() {
+
+        return this.getConfiguration().getLong("database.pool.idle_timeout", 600) * 1000;
+    }
+
+    /**
+     * get the time in milliseconds a connection can be borrowed before a leak
+     * will be reported
+     *
+     * @return 0 if the leak detection is disabled
+     */
+    public long getLeakDetectionThreshold() {
+
+        return Math.max(0, this.getConfiguration().getLong("database.pool.leak_detection_threshold", 30)) * 1000;
+    }
+
+    /**
+     * get the time in milliseconds to wait for a free connection
+     *
+     * @return
+     */
+    public long getConnectionTimeout() {
+
+        return this.getConfiguration().getLong("database.pool.connection_timeout", 10) * 1000;
+    }
+
+    /**
+     * get the amount of prepared statements that will be cached per
+     * connection
+     *
+     * @return
+     */
+    public int getStatementCacheSize() {
+
+        return Math.max(0, this.getConfiguration().getInt("database.pool.statement_cache_size", 64));
+    }
+
+    /**
+     * get the amount of rows a cursor reads with one round trip
+     *
+     * @return
+     */
+    public int getFetchSize() {
+
+        return Math.max(1, this.getConfiguration().getInt("database.fetch_size", 500));
+    }
+}
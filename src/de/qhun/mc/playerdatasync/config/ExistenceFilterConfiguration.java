@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.config;
+
+import de.qhun.mc.playerdatasync.Main;
+
+/**
+ * the configuration of the in memory filter of existing player data
+ *
+ * @author Wrath
+ */
+public class ExistenceFilterConfiguration extends AbstractConfiguration {
+
+    public ExistenceFilterConfiguration(Main plugin) {
+        super(plugin);
+    }
+
+    /**
+     * should the existing keys be loaded on startup?
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+
+        return this.getConfiguration().getBoolean("database.existence_filter.enabled", false);
+    }
+
+    /**
+     * get the chance that a missing key will be reported as existing
+     *
+     * @return
+     */
+    public double getFalsePositiveRate() {
+
+        return Math.min(0.5, Math.max(0.0001, this.getConfiguration().getDouble("database.existence_filter.false_positive_rate", 0.01)));
+    }
+}
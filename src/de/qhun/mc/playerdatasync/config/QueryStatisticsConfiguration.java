@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.config;
+
+import de.qhun.mc.playerdatasync.Main;
+
+/**
+ * the configuration of the query timing and the slow query log
+ *
+ * @author Wrath
+ */
+public class QueryStatisticsConfiguration extends AbstractConfiguration {
+
+    public QueryStatisticsConfiguration(Main plugin) {
+        super(plugin);
+    }
+
+    /**
+     * get the time in milliseconds after a query counts as slow
+     *
+     * @return
+     */
+    public long getSlowQueryThreshold() {
+
+        return Math.max(0, this.getConfiguration().getLong("database.statistics.slow_query_threshold", 250));
+    }
+
+    /**
+     * get the share of slow queries that will be logged between 0 and 1
+     *
+     * @return
+     */
+    public double getSlowQuerySampleRate() {
+
+        return Math.min(1, Math.max(0, this.getConfiguration().getDouble("database.statistics.slow_query_sample_rate", 1)));
+    }
+
+    /**
+     * should a summary of all query timings be logged on shutdown?
+     *
+     * @return
+     */
+    public boolean isSummaryEnabled() {
+
+        return this.getConfiguration().getBoolean("database.statistics.summary", true);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.config;
+
+import de.qhun.mc.playerdatasync.Main;
+
+/**
+ * the configuration of the delayed and batched repository writes
+ *
+ * @author Wrath
+ */
+public class WriteBehindConfiguration extends AbstractConfiguration {
+
+    public WriteBehindConfiguration(Main plugin) {
+        super(plugin);
+    }
+
+    /**
+     * should stores be collected and written in batches?
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+
+        return this.getConfiguration().getBoolean("database.write_behind.enabled", false);
+    }
+
+    /**
+     * get the amount of pending stores that trigger a flush
+     *
+     * @return
+     */
+    public int getBatchSize() {
+
+        return Math.max(1, this.getConfiguration().getInt("database.write_behind.batch_size", 50));
+    }
+
+    /**
+     * get the maximum time in milliseconds a store will be delayed
+     *
+     * @return
+     */
+    public long getFlushInterval() {
+
+        return Math.max(50, this.getConfiguration().getLong("database.write_behind.flush_interval", 1000));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * compresses the values of compressed columns. every compressed value starts
+ * with a marker and the id of the codec, followed by the uncompressed length
+ * and the compressed bytes. values without the marker have been written
+ * before the column was compressed and are returned as they are.
+ *
+ * @author Wrath
+ */
+class ColumnCompression {
+
+    // the first byte of every compressed value. it is not part of the
+    // base64 alphabet or of the binary inventory formats
+    private static final byte MARKER = (byte) 0xC5;
+
+    // the available codecs
+    private static final byte CODEC_DEFLATE = 1;
+
+    // fast compression is more important than the last few bytes
+    private static final int DEFLATE_LEVEL = Deflater.BEST_SPEED;
+
+    // the largest uncompressed value that will be read. deflate cannot
+    // compress more than 1032:1, a larger length is a broken header
+    private static final int MAX_LENGTH = 64 * 1024 * 1024;
+    private static final int MAX_RATIO = 1032;
+
+    // the codecs are reused by every thread
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(
+            () -> new Deflater(DEFLATE_LEVEL, true)
+    );
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * compresses the given value
+     *
+     * @param value
+     * @return
+     */
+    public static byte[] compress(byte[] value) {
+
+        Deflater deflater = ColumnCompression.deflaters.get();
+        deflater.reset();
+        deflater.setInput(value);
+        deflater.finish();
+
+        // the header
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(value.length / 2 + 16);
+        outputStream.write(MARKER);
+        outputStream.write(CODEC_DEFLATE);
+        outputStream.write(value.length >>> 24);
+        outputStream.write(value.length >>> 16);
+        outputStream.write(value.length >>> 8);
+        outputStream.write(value.length);
+
+        // the compressed bytes
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+
+            int length = deflater.deflate(buffer);
+            outputStream.write(buffer, 0, length);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * decompresses the given value. uncompressed values are returned as they
+     * are.
+     *
+     * @param value
+     * @return
+     * @throws IOException
+     */
+    public static byte[] decompress(byte[] value) throws IOException {
+
+        if (value.length < 6 || value[0] != MARKER) {
+
+            return value;
+        }
+
+        if (value[1] != CODEC_DEFLATE) {
+
+            throw new IOException("Unknown compression codec " + value[1]);
+        }
+
+        int length = ((value[2] & 0xFF) << 24) | ((value[3] & 0xFF) << 16)
+                | ((value[4] & 0xFF) << 8) | (value[5] & 0xFF);
+        if (length < 0 || length > MAX_LENGTH || (long) (value.length - 6) * MAX_RATIO < length) {
+
+            throw new IOException("Invalid uncompressed length " + length);
+        }
+
+        Inflater inflater = ColumnCompression.inflaters.get();
+        inflater.reset();
+        inflater.setInput(value, 6, value.length - 6);
+
+        // the uncompressed length is known
+        byte[] result = new byte[length];
+        try {
+
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+
+                int read = inflater.inflate(result, offset, length - offset);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+
+                    break;
+                }
+                offset += read;
+            }
+
+            if (offset != length) {
+
+                throw new IOException("Compressed value is truncated");
+            }
+
+            // the compressed bytes must end with the value. the end of the
+            // last block may not have been read yet
+            int excess = inflater.finished() ? 0 : inflater.inflate(new byte[1]);
+            if (excess != 0 || !inflater.finished()) {
+
+                throw new IOException("Compressed value is longer than " + length + " bytes");
+            }
+        } catch (DataFormatException ex) {
+
+            throw new IOException(ex);
+        }
+
+        return result;
+    }
+}
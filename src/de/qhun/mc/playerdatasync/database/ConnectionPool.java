@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.config.ConnectionPoolConfiguration;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * a bounded pool of database connections with idle eviction, validation on
+ * borrow and leak detection
+ *
+ * @author Wrath
+ */
+public class ConnectionPool {
+
+    /**
+     * opens a new physical connection to the database
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+
+        public Connection create() throws SQLException;
+    }
+
+    // the amount of idle connections that will never be evicted
+    private static final int MINIMUM_IDLE = 1;
+
+    // seconds to wait for a connection validation
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    // the factory for new connections
+    private final ConnectionFactory connectionFactory;
+
+    // the pool settings
+    private final int maxPoolSize;
+    private final long idleTimeout;
+    private final long leakDetectionThreshold;
+    private final long connectionTimeout;
+    private final int statementCacheSize;
+
+    // idle connections, the most recently used one first
+    private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+
+    // connections that are currently in use
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+
+    // one permit for every connection that can be borrowed
+    private final Semaphore permits;
+
+    // runs eviction and leak detection
+    private final ScheduledExecutorService housekeeper;
+
+    private volatile boolean shutdown = false;
+
+    public ConnectionPool(ConnectionFactory connectionFactory, ConnectionPoolConfiguration configuration) {
+
+        this.connectionFactory = connectionFactory;
+        this.maxPoolSize = configuration.getMaxPoolSize();
+        this.idleTimeout = configuration.getIdleTimeout();
+        this.leakDetectionThreshold = configuration.getLeakDetectionThreshold();
+        this.connectionTimeout = configuration.getConnectionTimeout();
+        this.statementCacheSize = configuration.getStatementCacheSize();
+        this.permits = new Semaphore(this.maxPoolSize, true);
+
+        // start the housekeeping
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, "QhunPlayerDataSync-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeeping, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * borrow a connection from the pool. the connection must be closed to
+     * return it to the pool.
+     *
+     * @return
+     * @throws SQLException
+     */
+    public Connection borrow() throws SQLException {
+
+        if (this.shutdown) {
+
+            throw new SQLException("The connection pool has been shut down");
+        }
+
+        // wait for a free slot
+        try {
+
+            if (!this.permits.tryAcquire(this.connectionTimeout, TimeUnit.MILLISECONDS)) {
+
+                throw new SQLException(String.format(
+                        "Timeout after %d ms while waiting for a database connection. All %d connections are in use.",
+                        this.connectionTimeout, this.maxPoolSize
+                ));
+            }
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+
+        try {
+
+            // take the most recently used valid connection
+            PooledConnection pooled;
+            while ((pooled = this.idleConnections.pollFirst()) != null) {
+
+                if (this.isValid(pooled)) {
+                    break;
+                }
+
+                pooled.closePhysical();
+            }
+
+            // no idle connection available, open a new one
+            if (pooled == null) {
+
+                pooled = new PooledConnection(this, this.connectionFactory.create(), this.statementCacheSize);
+            }
+
+            this.borrowedConnections.add(pooled);
+            return pooled.borrow(this.leakDetectionThreshold > 0);
+
+        } catch (SQLException | RuntimeException ex) {
+
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * returns a connection to the pool
+     *
+     * @param pooled
+     */
+    void release(PooledConnection pooled) {
+
+        this.borrowedConnections.remove(pooled);
+
+        try {
+
+            if (this.shutdown || pooled.isBroken() || pooled.getConnection().isClosed()) {
+
+                pooled.closePhysical();
+            } else {
+
+                pooled.reset();
+                pooled.markIdle();
+                this.idleConnections.offerFirst(pooled);
+            }
+        } catch (SQLException ex) {
+
+            pooled.closePhysical();
+        } finally {
+
+            this.permits.release();
+        }
+    }
+
+    /**
+     * closes all connections and stops the housekeeping
+     */
+    public void shutdown() {
+
+        this.shutdown = true;
+        this.housekeeper.shutdownNow();
+
+        // close all idle connections
+        PooledConnection pooled;
+        while ((pooled = this.idleConnections.pollFirst()) != null) {
+
+            pooled.closePhysical();
+        }
+
+        // borrowed connections will be closed when they are returned
+        if (!this.borrowedConnections.isEmpty()) {
+
+            Main.log.warning(String.format(
+                    "%d database connections are still in use while shutting down the pool",
+                    this.borrowedConnections.size()
+            ));
+        }
+    }
+
+    /**
+     * checks if the given connection is still usable
+     *
+     * @param pooled
+     * @return
+     */
+    private boolean isValid(PooledConnection pooled) {
+
+        try {
+
+            return !pooled.isBroken() && pooled.getConnection().isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException ex) {
+
+            return false;
+        }
+    }
+
+    /**
+     * evicts idle connections and reports leaked connections
+     */
+    private void housekeeping() {
+
+        long now = System.currentTimeMillis();
+
+        try {
+
+            // evict connections that are unused for too long
+            Iterator<PooledConnection> idle = this.idleConnections.descendingIterator();
+            while (idle.hasNext() && this.idleConnections.size() > MINIMUM_IDLE) {
+
+                PooledConnection pooled = idle.next();
+                if (now - pooled.getLastUsed() > this.idleTimeout && this.idleConnections.remove(pooled)) {
+
+                    pooled.closePhysical();
+                }
+            }
+
+            // report connections that are borrowed for too long, the
+            // borrower is only known if the leak detection is enabled
+            this.borrowedConnections.forEach(pooled -> {
+
+                Throwable borrowedBy = pooled.getBorrowedBy();
+                if (!pooled.isLeakReported() && borrowedBy != null
+                        && now - pooled.getBorrowedAt() > this.leakDetectionThreshold) {
+
+                    pooled.setLeakReported();
+                    Main.log.warning(String.format(
+                            "A database connection is in use for %d ms. This might be a connection leak.",
+                            now - pooled.getBorrowedAt()
+                    ));
+                    Main.log.log(Level.WARNING, borrowedBy.getMessage(), borrowedBy);
+                }
+            });
+        } catch (Exception ex) {
+
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package de.qhun.mc.playerdatasync.database;
 
 import de.qhun.mc.playerdatasync.Main;
 import org.bukkit.plugin.java.JavaPlugin;
+import de.qhun.mc.playerdatasync.config.ConnectionPoolConfiguration;
 import de.qhun.mc.playerdatasync.config.DatabaseConfiguration;
 import java.sql.Connection;
 import java.sql.Driver;
@@ -34,7 +35,8 @@ public abstract class DatabaseAdapter {
     // plugin holder
     protected JavaPlugin plugin;
     protected DatabaseConfiguration configuration;
-    protected Connection connection;
+    protected ConnectionPoolConfiguration poolConfiguration;
+    protected ConnectionPool connectionPool;
     protected DatabaseExecutor databaseExecutor;
 
     public DatabaseAdapter(JavaPlugin plugin) {
@@ -49,6 +51,17 @@ public abstract class DatabaseAdapter {
 
     protected abstract DatabaseDialect getDatabaseDialect();
 
+    /**
+     * get driver specific parameters that will be appended to the connection
+     * url
+     *
+     * @return
+     */
+    protected String getConnectionParameters() {
+
+        return "";
+    }
+
     /**
      * set the database configuration class
      *
@@ -59,15 +72,25 @@ public abstract class DatabaseAdapter {
         this.configuration = configuration;
     }
 
+    /**
+     * set the connection pool configuration
+     *
+     * @param poolConfiguration
+     */
+    public void setPoolConfiguration(ConnectionPoolConfiguration poolConfiguration) {
+
+        this.poolConfiguration = poolConfiguration;
+    }
+
     /**
      * connects to the configured database
      *
      * @return
      */
-    public Connection connectToDatabase() {
+    public ConnectionPool connectToDatabase() {
 
         // check if there is a configuration
-        if (this.configuration == null) {
+        if (this.configuration == null || this.poolConfiguration == null) {
 
             throw new Error("There is no database configuration class available!");
         }
@@ -82,25 +105,33 @@ public abstract class DatabaseAdapter {
             String connectionUrl = String.format(
                     "jdbc:%s://%s:%s/%s?user=%s&password=%s"
                     + "&autoReconnect=%s"
-                    + "&useUnicode=true&characterEncoding=UTF-8",
+                    + "&useUnicode=true&characterEncoding=UTF-8%s",
                     this.configuration.getProtocol(),
                     this.configuration.getHost(),
                     this.configuration.getPort(),
                     this.configuration.getDatabase(),
                     this.configuration.getUsername(),
                     this.configuration.getPassword(),
-                    this.configuration.getAutoReconnect() ? "true" : "false"
+                    this.configuration.getAutoReconnect() ? "true" : "false",
+                    this.getConnectionParameters()
             );
-            this.connection = DriverManager.getConnection(connectionUrl);
+            this.connectionPool = new ConnectionPool(
+                    () -> DriverManager.getConnection(connectionUrl),
+                    this.poolConfiguration
+            );
+
+            // borrow one connection to fail early on a wrong configuration
+            this.connectionPool.borrow().close();
 
-            return this.connection;
+            return this.connectionPool;
         } catch (ClassNotFoundException ex) {
 
             // driver not found!
             throw new Error("Could not find database driver for jdbc: " + this.getJdbcDriverClass().getName(), ex);
         } catch (SQLException ex) {
 
-            // connection error
+            // connection error, release the pool
+            this.disconnectFromDatabase();
             throw new Error("Error while connecting to the database", ex);
         } catch (Exception ex) {
 
@@ -115,29 +146,28 @@ public abstract class DatabaseAdapter {
      */
     public boolean disconnectFromDatabase() {
 
-        try {
-
-            // log the disconnect
-            Main.log.info("Disconnecting from the database backend");
+        // log the disconnect
+        Main.log.info("Disconnecting from the database backend");
 
-            // close connection
-            this.connection.close();
-            return true;
-        } catch (SQLException ex) {
+        // close all pooled connections
+        if (this.connectionPool != null) {
 
-            // print error
-            throw new Error("error while disconnecting from the database", ex);
+            this.connectionPool.shutdown();
         }
+
+        return true;
     }
 
     /**
-     * get the current database connection instance
+     * borrow a database connection from the pool. the connection must be
+     * closed after usage to return it to the pool.
      *
      * @return
+     * @throws java.sql.SQLException
      */
-    public Connection getConnection() {
+    public Connection getConnection() throws SQLException {
 
-        return this.connection;
+        return this.connectionPool.borrow();
     }
 
     /**
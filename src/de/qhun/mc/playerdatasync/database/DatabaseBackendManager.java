@@ -18,10 +18,14 @@ package de.qhun.mc.playerdatasync.database;
 
 import de.qhun.mc.playerdatasync.ConfigurationManager;
 import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.config.ConnectionPoolConfiguration;
 import de.qhun.mc.playerdatasync.config.DatabaseConfiguration;
+import de.qhun.mc.playerdatasync.config.QueryStatisticsConfiguration;
 import java.lang.reflect.Constructor;
-import java.sql.Connection;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.bukkit.plugin.java.JavaPlugin;
 
 /**
@@ -38,8 +42,14 @@ public class DatabaseBackendManager {
     // the current selected backend
     private DatabaseAdapter backendAdapter;
 
-    // the current database connection
-    private Connection connection;
+    // the current connection pool
+    private ConnectionPool connectionPool;
+
+    // the threads that perform asynchronous database transactions
+    private ExecutorService executor;
+
+    // the settings of the query timings
+    private QueryStatisticsConfiguration statisticsConfiguration;
 
     public DatabaseBackendManager(JavaPlugin plugin, ConfigurationManager configurationManager) {
 
@@ -57,6 +67,16 @@ public class DatabaseBackendManager {
         return this.backendAdapter;
     }
 
+    /**
+     * get the executor for asynchronous database transactions
+     *
+     * @return
+     */
+    public ExecutorService getExecutor() {
+
+        return this.executor;
+    }
+
     /**
      * connect to the configured backend and prepare everything to start
      *
@@ -64,9 +84,18 @@ public class DatabaseBackendManager {
      */
     public DatabaseAdapter connectToDatabase() {
 
-        // setup max database threads
-        int maxThreads = this.configurationManager.getConfiguration().getInt("database.max_thread_count", 4);
-        Executors.newFixedThreadPool(maxThreads);
+        // the pool size is limited by the max database threads
+        ConnectionPoolConfiguration poolConfiguration = new ConnectionPoolConfiguration((Main) this.plugin);
+
+        // setup max database threads. there is no need for more threads than
+        // connections because every thread would wait for a free connection
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolConfiguration.getMaxPoolSize(), runnable -> {
+
+            Thread thread = new Thread(runnable, "QhunPlayerDataSync-database-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
         // get the backend adapter class for the configuration
         String adapterClassName = this.configurationManager.getConfiguration().getString("database.adapter");
@@ -86,6 +115,14 @@ public class DatabaseBackendManager {
 
             // add the config
             this.backendAdapter.setConfiguration(ctorConfig.newInstance(this.plugin));
+            this.backendAdapter.setPoolConfiguration(poolConfiguration);
+
+            // time all queries and log the slow ones
+            this.statisticsConfiguration = new QueryStatisticsConfiguration((Main) this.plugin);
+            this.backendAdapter.query().getStatistics().setConfiguration(this.statisticsConfiguration);
+
+            // the rows a cursor reads with one round trip
+            this.backendAdapter.query().setFetchSize(poolConfiguration.getFetchSize());
 
             // create configuration
         } catch (Exception ex) {
@@ -94,9 +131,47 @@ public class DatabaseBackendManager {
         }
 
         // now connect to the database
-        this.connection = this.backendAdapter.connectToDatabase();
+        this.connectionPool = this.backendAdapter.connectToDatabase();
 
         return this.backendAdapter;
     }
 
+    /**
+     * stops the executor after all queued transactions are done
+     */
+    public void shutdownExecutor() {
+
+        if (this.executor == null) {
+            return;
+        }
+
+        // no new tasks, but finish the queued ones
+        this.executor.shutdown();
+
+        try {
+
+            if (!this.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+
+                Main.log.warning("Database transactions did not finish in time. Some data might not be saved!");
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * logs the timings of all executed queries if enabled
+     */
+    public void logQueryStatistics() {
+
+        if (this.backendAdapter != null && this.statisticsConfiguration != null
+                && this.statisticsConfiguration.isSummaryEnabled()) {
+
+            this.backendAdapter.query().getStatistics().logSummary();
+        }
+    }
+
 }
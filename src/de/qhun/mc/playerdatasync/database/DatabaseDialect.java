@@ -29,15 +29,92 @@ public interface DatabaseDialect {
 
     public String createTableIfNotExists(String tableName, List<DomainModelAttribute> columns);
 
+    public String addColumn(String tableName, DomainModelAttribute column);
+
+    public String addIndex(String tableName, DomainModelAttribute column);
+
+    public String modifyColumn(String tableName, DomainModelAttribute column);
+
     public String insert(String tableName, List<DomainModelAttribute> values);
 
+    /**
+     * updates one row. the non primary columns will be set, the primary
+     * columns select the row. the parameters are the set values followed by
+     * the primary values. timestamp columns are set by the database and have
+     * no parameter in every written statement.
+     *
+     * @param tableName
+     * @param values
+     * @return
+     */
     public String update(String tableName, List<DomainModelAttribute> values);
 
+    /**
+     * adds an amount to a column of one row. the other non primary columns
+     * will be set, the primary columns select the row. the parameters are the
+     * amount, the set values and the primary values.
+     *
+     * @param tableName
+     * @param column
+     * @param values
+     * @return
+     */
+    public String increment(String tableName, DomainModelAttribute column, List<DomainModelAttribute> values);
+
+    /**
+     * updates one row if it still has the expected version and increases the
+     * version. the non primary columns will be set, the primary columns and
+     * the version select the row. the parameters are the set values, the
+     * primary values and the expected version.
+     *
+     * @param tableName
+     * @param version
+     * @param values
+     * @return
+     */
+    public String compareAndSwap(String tableName, DomainModelAttribute version, List<DomainModelAttribute> values);
+
     public String delete(String tableName, List<DomainModelAttribute> values);
 
     public String replaceInto(String tableName, List<DomainModelAttribute> values);
+
+    /**
+     * inserts one row or updates the given columns of the existing row. the
+     * parameters are the values of all columns.
+     *
+     * @param tableName
+     * @param values
+     * @param updateColumns the columns to update, primary columns are ignored
+     * @return
+     */
+    public String upsert(String tableName, List<DomainModelAttribute> values, List<DomainModelAttribute> updateColumns);
     
     public String get(String tableName, List<DomainModelAttribute> values);
 
+    public String exists(String tableName, List<DomainModelAttribute> values);
+
+    public String getColumns(String tableName, List<DomainModelAttribute> columns);
+
+    /**
+     * selects one page of rows ordered by the given columns. the first bound
+     * columns select the rows after the given values, the parameters are the
+     * values of the previous columns followed by the value of the compared
+     * column for every bound column.
+     *
+     * @param tableName
+     * @param orderColumns
+     * @param boundColumns
+     * @param limit
+     * @return
+     */
+    public String getPage(String tableName, List<DomainModelAttribute> orderColumns, int boundColumns, int limit);
+
+    /**
+     * selects the current time of the database in milliseconds
+     *
+     * @return
+     */
+    public String currentTimeMillis();
+
     //public Object getDatabaseRepresentation(Object value);
 }
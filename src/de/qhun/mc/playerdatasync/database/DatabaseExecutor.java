@@ -21,14 +21,25 @@ import de.qhun.mc.playerdatasync.Main;
 import de.qhun.mc.playerdatasync.database.decorators.ColumnType;
 import de.qhun.mc.playerdatasync.database.domainmodel.DecoratedDomainModel;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * a class that performs database queries over different dialects
@@ -41,12 +52,44 @@ public class DatabaseExecutor {
     private final DatabaseDialect dialect;
     private final DatabaseAdapter databaseAdapter;
 
+    // the precompiled statements of every entity
+    private final Map<Class<?>, QueryTemplates> templates = new ConcurrentHashMap<>();
+
+    // the timings of all queries
+    private final QueryStatistics statistics = new QueryStatistics();
+
+    // the amount of rows a cursor reads with one round trip
+    private volatile int fetchSize = 500;
+
+    // the compiled row mappers of every entity by query
+    private final Map<Class<?>, Map<String, RowMapper>> rowMappers = new ConcurrentHashMap<>();
+
     public DatabaseExecutor(DatabaseAdapter databaseAdapter, DatabaseDialect dialect) {
 
         this.dialect = dialect;
         this.databaseAdapter = databaseAdapter;
     }
 
+    /**
+     * get the timings of all executed queries
+     *
+     * @return
+     */
+    public QueryStatistics getStatistics() {
+
+        return this.statistics;
+    }
+
+    /**
+     * set the amount of rows a cursor reads with one round trip
+     *
+     * @param fetchSize
+     */
+    public void setFetchSize(int fetchSize) {
+
+        this.fetchSize = fetchSize;
+    }
+
     /**
      * create the table
      *
@@ -58,13 +101,12 @@ public class DatabaseExecutor {
 
         String query = this.dialect.createTable(tableName, columns);
 
-        try {
-
-            // prepare statement and insert variables
-            PreparedStatement statement = this.databaseAdapter.getConnection().prepareStatement(query);
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection();
+                PreparedStatement statement = connection.prepareStatement(query)) {
 
             // execute!
-            return this.execute(statement) > 0;
+            return this.execute(query, statement) > 0;
 
         } catch (SQLException ex) {
 
@@ -86,13 +128,12 @@ public class DatabaseExecutor {
 
         String query = this.dialect.createTableIfNotExists(tableName, columns);
 
-        try {
-
-            // prepare statement and insert variables
-            PreparedStatement statement = this.databaseAdapter.getConnection().prepareStatement(query);
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection();
+                PreparedStatement statement = connection.prepareStatement(query)) {
 
             // execute!
-            return this.execute(statement) > 0;
+            return this.execute(query, statement) > 0;
 
         } catch (SQLException ex) {
 
@@ -104,82 +145,310 @@ public class DatabaseExecutor {
     }
 
     /**
-     * insert into table
+     * adds missing columns with their index to an existing table and changes text columns of
+     * binary attributes into binary columns. the stored bytes are kept, so
+     * values written by older versions can still be read.
      *
      * @param tableName
-     * @param values
-     * @return
+     * @param columns
      */
-    public boolean insert(String tableName, List<DomainModelAttribute> values) {
+    public void upgradeColumns(String tableName, List<DomainModelAttribute> columns) {
 
-        String query = this.dialect.insert(tableName, values);
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection()) {
 
-        try {
+            for (DomainModelAttribute column : columns) {
 
-            // prepare statement and insert variables
-            PreparedStatement statement = this.databaseAdapter.getConnection().prepareStatement(query);
-            this.prepareValues(statement, values);
+                // read the current type of the column
+                String typeName = null;
+                try (ResultSet result = connection.getMetaData().getColumns(
+                        connection.getCatalog(), null, tableName, column.columnName
+                )) {
 
-            // execute!
-            return this.execute(statement) > 0;
+                    if (result.next()) {
+
+                        typeName = result.getString("TYPE_NAME").toUpperCase();
+                    }
+                }
+
+                List<String> queries = new ArrayList<>();
+                if (typeName == null) {
+
+                    // the column has been added by a newer version
+                    queries.add(this.dialect.addColumn(tableName, column));
+                    if (column.indexed) {
+
+                        queries.add(this.dialect.addIndex(tableName, column));
+                    }
+                } else if ((column.type == ColumnType.Object || column.compressed)
+                        && !typeName.contains("BLOB") && !typeName.contains("BINARY")) {
+
+                    // text columns need to be changed
+                    queries.add(this.dialect.modifyColumn(tableName, column));
+                }
+
+                for (String query : queries) {
+
+                    try (PreparedStatement statement = connection.prepareStatement(query)) {
+
+                        this.execute(query, statement);
+                    }
+                }
+
+                if (!queries.isEmpty()) {
+
+                    Main.log.info(String.format("Upgraded column %s of table %s", column.columnName, tableName));
+                }
+            }
 
         } catch (SQLException ex) {
 
             // print error
             Main.log.log(Level.WARNING, ex.getMessage(), ex);
         }
+    }
 
-        return false;
+    /**
+     * insert into table
+     *
+     * @param tableName
+     * @param attributes
+     * @param values
+     * @return
+     */
+    public boolean insert(String tableName, List<DomainModelAttribute> attributes, Object[] values) {
+
+        String query = this.dialect.insert(tableName, attributes);
+
+        return this.executeUpdate(query, attributes, values);
     }
 
     /**
      * updates onto table
      *
      * @param tableName
+     * @param attributes
      * @param values
      * @return
      */
-    public boolean update(String tableName, List<DomainModelAttribute> values) {
+    public boolean update(String tableName, List<DomainModelAttribute> attributes, Object[] values) {
 
-        String query = this.dialect.update(tableName, values);
+        // the dialect expects the set values first, then the primary values
+        List<DomainModelAttribute> orderedAttributes = new ArrayList<>(attributes.size());
+        Object[] orderedValues = new Object[values.length];
+        for (boolean primary : new boolean[]{false, true}) {
 
-        try {
+            for (int i = 0; i < attributes.size(); i++) {
 
-            // prepare statement and insert variables
-            PreparedStatement statement = this.databaseAdapter.getConnection().prepareStatement(query);
-            this.prepareValues(statement, values);
+                if (attributes.get(i).isPrimary == primary) {
 
-            // execute!
-            return this.execute(statement) > 0;
+                    orderedValues[orderedAttributes.size()] = values[i];
+                    orderedAttributes.add(attributes.get(i));
+                }
+            }
+        }
 
-        } catch (SQLException ex) {
+        String query = this.dialect.update(tableName, orderedAttributes);
 
-            // print error
-            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        return this.executeUpdate(query, orderedAttributes, orderedValues);
+    }
+
+    /**
+     * updates the given columns of one stored entity if the row still has the
+     * version of the entity. the database increases the version.
+     *
+     * @param entity
+     * @param values the values of all attributes, the version is the expected
+     * one
+     * @param columns the attributes to update
+     * @return 0 if the entity is not stored or has another version, -1 if the
+     * statement failed
+     */
+    public int compareAndSwap(Class<?> entity, Object[] values, List<DomainModelAttribute> columns) {
+
+        DomainModelAttribute version = DecoratedDomainModel.getVersionAttribute(entity);
+
+        // the changed columns, the primary attributes and the version to
+        // select the row
+        List<DomainModelAttribute> attributes = columns.stream()
+                .filter(column -> !column.isPrimary && column != version)
+                .collect(Collectors.toList());
+        attributes.addAll(DecoratedDomainModel.getPrimaryAttributes(entity));
+        attributes.add(version);
+
+        Object[] attributeValues = new Object[attributes.size()];
+        for (int i = 0; i < attributeValues.length; i++) {
+
+            attributeValues[i] = values[attributes.get(i).position];
         }
 
-        return false;
+        String query = this.compileTemplates(entity).compareAndSwap(version, attributes);
+
+        return this.executeUpdateCount(query, attributes, attributeValues);
     }
 
     /**
      * deletes from table
      *
      * @param tableName
+     * @param attributes
      * @param values
      * @return
      */
-    public boolean delete(String tableName, List<DomainModelAttribute> values) {
+    public boolean delete(String tableName, List<DomainModelAttribute> attributes, Object[] values) {
 
-        String query = this.dialect.delete(tableName, values);
+        String query = this.dialect.delete(tableName, attributes);
 
-        try {
+        return this.executeUpdate(query, attributes, values);
+    }
+
+    /**
+     * replaces into table
+     *
+     * @param tableName
+     * @param attributes
+     * @param values
+     * @return
+     */
+    public boolean replaceInto(String tableName, List<DomainModelAttribute> attributes, Object[] values) {
+
+        String query = this.dialect.replaceInto(tableName, attributes);
+
+        return this.executeUpdate(query, attributes, values);
+    }
+
+    /**
+     * get from table
+     *
+     * @param <T>
+     * @param tableName
+     * @param entity
+     * @param attributes
+     * @param values
+     * @return
+     */
+    public <T extends Object> List<Object[]> get(String tableName, Class<T> entity, List<DomainModelAttribute> attributes, Object[] values) {
+
+        String query = this.dialect.get(tableName, attributes);
+
+        return this.executeQuery(query, entity, attributes, values);
+    }
+
+    /**
+     * get from table
+     *
+     * @param <T>
+     * @param tableName
+     * @param entity
+     * @return
+     */
+    public <T extends Object> List<Object[]> get(String tableName, Class<T> entity) {
+
+        return this.get(tableName, entity, Collections.emptyList(), new Object[0]);
+    }
+
+    /**
+     * compiles all statements of the given entity
+     *
+     * @param entity
+     * @return
+     */
+    public QueryTemplates compileTemplates(Class<?> entity) {
+
+        return this.templates.computeIfAbsent(entity, entityClass -> new QueryTemplates(
+                this.dialect,
+                DecoratedDomainModel.getTableName(entityClass),
+                DecoratedDomainModel.getAttributes(entityClass)
+        ));
+    }
+
+    /**
+     * inserts or updates one entity
+     *
+     * @param entity
+     * @param values the values of all attributes
+     * @return
+     */
+    public boolean store(Class<?> entity, Object[] values) {
+
+        return this.executeUpdate(
+                this.compileTemplates(entity).upsert,
+                DecoratedDomainModel.getAttributes(entity),
+                values
+        );
+    }
+
+    /**
+     * inserts one entity or updates the given columns of the stored entity
+     *
+     * @param entity
+     * @param values the values of all attributes
+     * @param columns the attributes to update
+     * @return
+     */
+    public boolean store(Class<?> entity, Object[] values, List<DomainModelAttribute> columns) {
+
+        List<DomainModelAttribute> attributes = DecoratedDomainModel.getAttributes(entity);
+
+        // every attribute changed, use the precompiled statement
+        if (columns.size() == attributes.size()) {
+
+            return this.store(entity, values);
+        }
+
+        String query = this.compileTemplates(entity).upsert(attributes, columns);
+
+        return this.executeUpdate(query, attributes, values);
+    }
+
+    /**
+     * inserts or updates multiple entities with one batch
+     *
+     * @param entity
+     * @param rows the values of every entity in the order of its attributes
+     * @return
+     */
+    public boolean storeBatch(Class<?> entity, List<Object[]> rows) {
+
+        return this.storeBatch(entity, rows, DecoratedDomainModel.getAttributes(entity));
+    }
+
+    /**
+     * inserts multiple entities or updates the given columns of the stored
+     * entities with one batch
+     *
+     * @param entity
+     * @param rows the values of every entity in the order of its attributes
+     * @param columns the attributes to update
+     * @return
+     */
+    public boolean storeBatch(Class<?> entity, List<Object[]> rows, List<DomainModelAttribute> columns) {
+
+        if (rows.isEmpty()) {
+            return true;
+        }
+
+        List<DomainModelAttribute> attributes = DecoratedDomainModel.getAttributes(entity);
 
-            // prepare statement and insert variables
-            PreparedStatement statement = this.databaseAdapter.getConnection().prepareStatement(query);
-            this.prepareValues(statement, values);
+        // every attribute changed, use the precompiled statement
+        String query = columns.size() == attributes.size()
+                ? this.compileTemplates(entity).upsert
+                : this.compileTemplates(entity).upsert(attributes, columns);
+
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection();
+                PreparedStatement statement = connection.prepareStatement(query)) {
+
+            // one batch entry per entity
+            for (Object[] row : rows) {
+
+                this.prepareWrittenValues(statement, attributes, row);
+                statement.addBatch();
+            }
 
             // execute!
-            return this.execute(statement) > 0;
+            this.executeBatch(query, statement);
+            return true;
 
         } catch (SQLException ex) {
 
@@ -191,24 +460,268 @@ public class DatabaseExecutor {
     }
 
     /**
-     * replaces into table
+     * deletes one entity
      *
-     * @param tableName
-     * @param values
+     * @param entity
+     * @param primaryValues the values of the primary attributes
      * @return
      */
-    public boolean replaceInto(String tableName, List<DomainModelAttribute> values) {
+    public boolean remove(Class<?> entity, Object[] primaryValues) {
 
-        String query = this.dialect.replaceInto(tableName, values);
+        String query = this.compileTemplates(entity).deleteByPrimary;
 
-        try {
+        // entities without primary attributes cannot be deleted
+        if (query == null) {
 
-            // prepare statement and insert variables
-            PreparedStatement statement = this.databaseAdapter.getConnection().prepareStatement(query);
-            this.prepareValues(statement, values);
+            throw new Error("There should be primary values to remove! If you want to truncate the table, use truncate instead!");
+        }
 
-            // execute!
-            return this.execute(statement) > 0;
+        return this.executeUpdate(query, DecoratedDomainModel.getPrimaryAttributes(entity), primaryValues);
+    }
+
+    /**
+     * find one entity by its primary values
+     *
+     * @param <T>
+     * @param entity
+     * @param primaryValues the values of the primary attributes
+     * @return the values of all attributes of every row
+     */
+    public <T extends Object> List<Object[]> findByPrimary(Class<T> entity, Object[] primaryValues) {
+
+        return this.executeQuery(
+                this.compileTemplates(entity).selectByPrimary,
+                entity,
+                DecoratedDomainModel.getPrimaryAttributes(entity),
+                primaryValues
+        );
+    }
+
+    /**
+     * find one entity of every given class by its primary values. the lookups
+     * run one after another on the same connection, so only one connection
+     * has to be borrowed.
+     *
+     * @param entities
+     * @param primaryValues the values of the primary attributes per entity
+     * @return the values of all attributes per entity or null if the entity
+     * does not exist
+     */
+    public List<Object[]> findByPrimaries(List<Class<?>> entities, List<Object[]> primaryValues) {
+
+        List<Object[]> rows = new ArrayList<>();
+        if (entities.isEmpty()) {
+            return rows;
+        }
+
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection()) {
+
+            for (int i = 0; i < entities.size(); i++) {
+
+                String query = this.compileTemplates(entities.get(i)).selectByPrimary;
+                try (PreparedStatement statement = connection.prepareStatement(query)) {
+
+                    // insert variables
+                    this.prepareValues(statement, DecoratedDomainModel.getPrimaryAttributes(entities.get(i)), primaryValues.get(i));
+
+                    // execute!
+                    try (ResultSet result = this.executeGet(query, statement)) {
+
+                        RowMapper rowMapper = this.getRowMapper(query, entities.get(i), result.getMetaData());
+                        rows.add(result.next() ? rowMapper.map(result) : null);
+                    }
+                }
+            }
+
+            return rows;
+
+        } catch (SQLException ex) {
+
+            // print error
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+
+        // nothing found on error
+        rows.clear();
+        entities.forEach(entity -> rows.add(null));
+        return rows;
+    }
+
+    /**
+     * find all entities
+     *
+     * @param <T>
+     * @param entity
+     * @return the values of all attributes of every row
+     */
+    public <T extends Object> List<Object[]> findAll(Class<T> entity) {
+
+        return this.executeQuery(this.compileTemplates(entity).selectAll, entity, Collections.emptyList(), new Object[0]);
+    }
+
+    /**
+     * adds an amount to a column of one stored entity in one statement and
+     * sets the given columns
+     *
+     * @param entity
+     * @param values the values of all attributes
+     * @param column the attribute to add the amount to
+     * @param amount
+     * @param columns the attributes to set
+     * @return false if the entity is not stored
+     */
+    public boolean increment(Class<?> entity, Object[] values, DomainModelAttribute column, Object amount, List<DomainModelAttribute> columns) {
+
+        // the amount, the set columns and the primary attributes
+        List<DomainModelAttribute> attributes = new ArrayList<>();
+        attributes.add(column);
+        columns.stream()
+                .filter(attribute -> !attribute.isPrimary && attribute != column)
+                .forEach(attributes::add);
+        attributes.addAll(DecoratedDomainModel.getPrimaryAttributes(entity));
+
+        Object[] attributeValues = new Object[attributes.size()];
+        attributeValues[0] = amount;
+        for (int i = 1; i < attributeValues.length; i++) {
+
+            attributeValues[i] = values[attributes.get(i).position];
+        }
+
+        String query = this.compileTemplates(entity).increment(column, attributes);
+
+        return this.executeUpdate(query, attributes, attributeValues);
+    }
+
+    /**
+     * find one page of entities ordered by the given attributes. the rows
+     * start after the given bound values, eg. the values of the last row of
+     * the previous page.
+     *
+     * @param <T>
+     * @param entity
+     * @param orderAttributes
+     * @param bounds the values of the first attributes, can be less than the
+     * amount of attributes
+     * @param limit
+     * @return the values of all attributes of every row
+     */
+    public <T extends Object> List<Object[]> findPage(Class<T> entity, List<DomainModelAttribute> orderAttributes, Object[] bounds, int limit) {
+
+        String query = this.dialect.getPage(
+                DecoratedDomainModel.getTableName(entity), orderAttributes, bounds.length, limit
+        );
+
+        // every condition repeats the previous values
+        List<DomainModelAttribute> attributes = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < bounds.length; i++) {
+
+            for (int j = 0; j <= i; j++) {
+
+                attributes.add(orderAttributes.get(j));
+                values.add(bounds[j]);
+            }
+        }
+
+        return this.executeQuery(query, entity, attributes, values.toArray());
+    }
+
+    /**
+     * streams all entities with a forward only cursor. the rows are read
+     * while consuming the stream. the connection will be returned to the pool
+     * when the stream has been consumed completely or is closed.
+     *
+     * @param <T>
+     * @param entity
+     * @return the values of all attributes of every row
+     */
+    public <T extends Object> Stream<Object[]> streamAll(Class<T> entity) {
+
+        return this.stream(this.compileTemplates(entity).selectAll, entity, false);
+    }
+
+    /**
+     * streams the primary values of all entities with a forward only cursor.
+     * only the primary attributes of the value arrays are filled. unlike the
+     * other methods, a database error will be thrown as IllegalStateException
+     * because an incomplete key list must not be used.
+     *
+     * @param <T>
+     * @param entity
+     * @return the values in the order of all attributes
+     */
+    public <T extends Object> Stream<Object[]> streamPrimaryKeys(Class<T> entity) {
+
+        String query = this.compileTemplates(entity).selectPrimaryKeys;
+
+        // entities without primary attributes have no keys
+        if (query == null) {
+            return Stream.empty();
+        }
+
+        return this.stream(query, entity, true);
+    }
+
+    /**
+     * get the current time of the database. all timestamps are written with
+     * this clock.
+     *
+     * @return the time in milliseconds or -1 if it could not be read
+     */
+    public long currentTimeMillis() {
+
+        String query = this.dialect.currentTimeMillis();
+
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection();
+                PreparedStatement statement = connection.prepareStatement(query);
+                ResultSet result = this.executeGet(query, statement)) {
+
+            if (result.next()) {
+
+                return result.getLong(1);
+            }
+
+        } catch (SQLException ex) {
+
+            // print error
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+
+        return -1;
+    }
+
+    /**
+     * checks if an entity with the given primary values exists without
+     * reading the row
+     *
+     * @param entity
+     * @param primaryValues the values of the primary attributes
+     * @return
+     */
+    public boolean exists(Class<?> entity, Object[] primaryValues) {
+
+        String query = this.compileTemplates(entity).existsByPrimary;
+
+        // entities without primary attributes cannot be identified
+        if (query == null) {
+
+            throw new Error("There should be primary values to check the existence of an entity!");
+        }
+
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection();
+                PreparedStatement statement = connection.prepareStatement(query)) {
+
+            // insert variables
+            this.prepareValues(statement, DecoratedDomainModel.getPrimaryAttributes(entity), primaryValues);
+
+            // execute! one row means the entity exists
+            try (ResultSet result = this.executeGet(query, statement)) {
+
+                return result.next();
+            }
 
         } catch (SQLException ex) {
 
@@ -220,66 +733,126 @@ public class DatabaseExecutor {
     }
 
     /**
-     * get from table
+     * executes the query with a forward only cursor and reads the rows while
+     * consuming the stream
      *
      * @param <T>
-     * @param tableName
+     * @param query
      * @param entity
-     * @param values
+     * @param failOnError throw database errors instead of ending the stream
      * @return
      */
-    public <T extends Object> List<List<DomainModelAttribute>> get(String tableName, Class<T> entity, List<DomainModelAttribute> values) {
+    private <T extends Object> Stream<Object[]> stream(String query, Class<T> entity, boolean failOnError) {
 
-        String query = this.dialect.get(tableName, values);
-        List<List<DomainModelAttribute>> stack = new ArrayList<>();
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet result = null;
 
         try {
 
-            // prepare statement and insert variables
-            PreparedStatement statement = this.databaseAdapter.getConnection().prepareStatement(query);
-            this.prepareValues(statement, values);
+            // a statement with an open cursor can not be shared, so bypass
+            // the statement cache
+            connection = this.databaseAdapter.getConnection();
+            statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(this.fetchSize);
+            result = this.executeGet(query, statement);
+
+            ResourceCloser closer = new ResourceCloser(connection, statement, result);
+            return StreamSupport
+                    .stream(new Cursor(result, this.getRowMapper(query, entity, result.getMetaData()), closer, failOnError), false)
+                    .onClose(closer);
+
+        } catch (SQLException ex) {
+
+            // release everything
+            new ResourceCloser(connection, statement, result).run();
+            if (failOnError) {
+
+                throw new IllegalStateException(ex.getMessage(), ex);
+            }
+
+            // print error
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+
+        // empty stream on error
+        return Stream.empty();
+    }
+
+    /**
+     * binds the values to the query and executes it
+     *
+     * @param query
+     * @param attributes the attributes of the parameters
+     * @param values
+     * @return
+     */
+    private boolean executeUpdate(String query, List<DomainModelAttribute> attributes, Object[] values) {
+
+        return this.executeUpdateCount(query, attributes, values) > 0;
+    }
+
+    /**
+     * binds the values to the query and executes it
+     *
+     * @param query
+     * @param attributes the attributes of the parameters
+     * @param values
+     * @return the amount of changed rows or -1 if the statement failed
+     */
+    private int executeUpdateCount(String query, List<DomainModelAttribute> attributes, Object[] values) {
+
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection();
+                PreparedStatement statement = connection.prepareStatement(query)) {
+
+            // insert variables
+            this.prepareWrittenValues(statement, attributes, values);
 
             // execute!
-            ResultSet result = this.executeGet(statement);
+            return this.execute(query, statement);
+
+        } catch (SQLException ex) {
 
-            while (result.next()) {
+            // print error
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
 
-                // create a map
-                List<DomainModelAttribute> attributeList = new ArrayList<>();
-                ResultSetMetaData metadata = result.getMetaData();
+        return -1;
+    }
 
-                // iterate through the columns
-                // STARTING BY COLUMN 1
-                for (int i = 1; i <= metadata.getColumnCount(); i++) {
+    /**
+     * binds the values to the query and reads all rows
+     *
+     * @param <T>
+     * @param query
+     * @param entity
+     * @param attributes the attributes of the parameters
+     * @param values
+     * @return
+     */
+    private <T extends Object> List<Object[]> executeQuery(String query, Class<T> entity, List<DomainModelAttribute> attributes, Object[] values) {
 
-                    int[] comulm = {i};
+        List<Object[]> stack = new ArrayList<>();
 
-                    DomainModelAttribute attribute = DecoratedDomainModel
-                            .getAttributes(entity)
-                            .stream().filter(predicate -> {
-                                try {
-                                    return predicate.columnName.equals(metadata.getColumnName(comulm[0]));
-                                } catch (SQLException ex) {
+        // borrow a connection from the pool
+        try (Connection connection = this.databaseAdapter.getConnection();
+                PreparedStatement statement = connection.prepareStatement(query)) {
 
-                                    // log warning!
-                                    Main.log.warning("Could not receive column data for result set!");
-                                    Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            // insert variables
+            this.prepareValues(statement, attributes, values);
 
-                                }
+            // execute! the result set will be closed after reading all rows
+            try (ResultSet result = this.executeGet(query, statement)) {
 
-                                return false;
-                            })
-                            .findFirst().get();
+                // resolve the columns once per query
+                RowMapper rowMapper = this.getRowMapper(query, entity, result.getMetaData());
 
-                    // get value, null check
-                    if (attribute != null) {
-                        attribute.value = this.getTransformedValue(attribute, result, comulm[0]);
-                        attributeList.add(attribute);
-                    }
-                }
+                while (result.next()) {
 
-                // add to the list
-                stack.add(attributeList);
+                    // add to the list
+                    stack.add(rowMapper.map(result));
+                }
             }
 
         } catch (SQLException ex) {
@@ -293,155 +866,260 @@ public class DatabaseExecutor {
     }
 
     /**
-     * get from table
+     * get the row mapper of the given query or compiles it from the result
+     * set metadata
      *
-     * @param <T>
-     * @param tableName
+     * @param query
      * @param entity
+     * @param metadata
      * @return
      */
-    public <T extends Object> List<List<DomainModelAttribute>> get(String tableName, Class<T> entity) {
+    private RowMapper getRowMapper(String query, Class<?> entity, ResultSetMetaData metadata) throws SQLException {
 
-        return this.get(tableName, entity, new ArrayList<>());
+        Map<String, RowMapper> entityMappers = this.rowMappers.computeIfAbsent(entity, entityClass -> new ConcurrentHashMap<>());
+
+        RowMapper rowMapper = entityMappers.get(query);
+        if (rowMapper == null) {
+
+            rowMapper = new RowMapper(entity, metadata);
+            entityMappers.put(query, rowMapper);
+        }
+
+        return rowMapper;
     }
 
     /**
      * executes the given statement
      *
+     * @param query the sql template of the statement
      * @param statement
      * @return
      */
-    private int execute(PreparedStatement statement) throws SQLException {
+    private int execute(String query, PreparedStatement statement) throws SQLException {
 
-        Main.log.info(statement.toString());
-        return statement.executeUpdate();
+        long start = System.nanoTime();
+        try {
+            return statement.executeUpdate();
+        } finally {
+            this.statistics.record(query, System.nanoTime() - start);
+        }
     }
 
     /**
-     * executes the given statement
+     * executes the given batch statement
      *
+     * @param query the sql template of the statement
      * @param statement
      * @return
      */
-    private ResultSet executeGet(PreparedStatement statement) throws SQLException {
+    private int[] executeBatch(String query, PreparedStatement statement) throws SQLException {
 
-        Main.log.info(statement.toString());
-        return statement.executeQuery();
+        long start = System.nanoTime();
+        try {
+            return statement.executeBatch();
+        } finally {
+            this.statistics.record(query, System.nanoTime() - start);
+        }
     }
 
     /**
-     * prepare all given values for the database statement
+     * executes the given statement
      *
+     * @param query the sql template of the statement
      * @param statement
-     * @param values
+     * @return
      */
-    private void prepareValues(PreparedStatement statement, List<DomainModelAttribute> values) throws SQLException {
-
-        // counter var
-        // statements begin by 1
-        int[] i = {1};
+    private ResultSet executeGet(String query, PreparedStatement statement) throws SQLException {
 
-        // iterate through all values
-        values.forEach(domainModelValue -> {
+        long start = System.nanoTime();
+        try {
+            return statement.executeQuery();
+        } finally {
+            this.statistics.record(query, System.nanoTime() - start);
+        }
+    }
 
-            ColumnType type = domainModelValue.type;
-            Object value = domainModelValue.value;
+    /**
+     * prepare all given values for the database statement. the values are in
+     * the order of the given attributes.
+     *
+     * @param statement
+     * @param attributes
+     * @param values
+     */
+    private void prepareValues(PreparedStatement statement, List<DomainModelAttribute> attributes, Object[] values) throws SQLException {
 
-            try {
+        for (int i = 0; i < values.length; i++) {
 
-                // if value is null, set null
-                if (value == null) {
-
-                    statement.setNull(i[0], 0);
-                } else {
-
-                    switch (type) {
-
-                        case BigDecimal:
-                            statement.setBigDecimal(i[0], new BigDecimal((double) value));
-                            break;
-                        case Double:
-                            statement.setDouble(i[0], (double) value);
-                            break;
-                        case Float:
-                            statement.setFloat(i[0], (float) value);
-                            break;
-                        case Integer:
-                            statement.setInt(i[0], (int) value);
-                            break;
-                        case Date:
-                            statement.setDate(i[0], (Date) value);
-                            break;
-                        case Object:
-                            statement.setObject(i[0], value);
-                            break;
-                        case Boolean:
-                            statement.setBoolean(i[0], (boolean) value);
-                            break;
-                        default:
-                        case Text:
-                        case String:
-                            statement.setString(i[0], value.toString());
-                            break;
-                    }
+            // statements begin by 1
+            this.prepareValue(statement, i + 1, attributes.get(i), values[i]);
+        }
+    }
 
-                }
+    /**
+     * prepare the values of a written statement. timestamps are set by the
+     * database and have no parameter.
+     *
+     * @param statement
+     * @param attributes
+     * @param values
+     */
+    private void prepareWrittenValues(PreparedStatement statement, List<DomainModelAttribute> attributes, Object[] values) throws SQLException {
 
-            } catch (SQLException ex) {
+        int index = 1;
+        for (int i = 0; i < values.length; i++) {
 
-                // set null
-                try {
-                    statement.setNull(i[0], 0);
-                } catch (SQLException exx) {
+            if (!attributes.get(i).isTimestamp) {
 
-                    // do nothing
-                }
+                this.prepareValue(statement, index++, attributes.get(i), values[i]);
             }
-
-            // increment index counter
-            i[0]++;
-
-        });
-
+        }
     }
 
     /**
-     * prepare values
+     * prepare one value for the database statement
      *
+     * @param statement
+     * @param index
      * @param attribute
-     * @param result
-     * @param column
-     * @return
+     * @param value
+     * @throws SQLException the statement must not be executed with a value
+     * that could not be bound
      */
-    private Object getTransformedValue(DomainModelAttribute attribute, ResultSet result, int column) {
+    private void prepareValue(PreparedStatement statement, int index, DomainModelAttribute attribute, Object value) throws SQLException {
 
-        try {
+        // if value is null, set null
+        if (value == null) {
+
+            statement.setNull(index, 0);
+        } else if (attribute.compressed) {
+
+            // compressed values are written as bytes
+            statement.setBytes(index, ColumnCompression.compress(
+                    value instanceof byte[] ? (byte[]) value : value.toString().getBytes(StandardCharsets.UTF_8)
+            ));
+        } else {
 
             switch (attribute.type) {
 
                 case BigDecimal:
-                    return result.getBigDecimal(column);
+                    statement.setBigDecimal(index, new BigDecimal((double) value));
+                    break;
                 case Double:
-                    return result.getDouble(column);
+                    statement.setDouble(index, (double) value);
+                    break;
                 case Float:
-                    return result.getFloat(column);
+                    statement.setFloat(index, (float) value);
+                    break;
                 case Integer:
-                    return result.getInt(column);
+                    statement.setInt(index, (int) value);
+                    break;
+                case Long:
+                    statement.setLong(index, (long) value);
+                    break;
                 case Date:
-                    return result.getDate(column);
-                case Boolean:
-                    return result.getBoolean(column);
+                    statement.setDate(index, (Date) value);
+                    break;
                 case Object:
-                    return result.getObject(column);
+                    statement.setObject(index, value);
+                    break;
+                case Boolean:
+                    statement.setBoolean(index, (boolean) value);
+                    break;
                 default:
                 case Text:
                 case String:
-                    return result.getString(column);
+                    statement.setString(index, value.toString());
+                    break;
             }
 
-        } catch (SQLException ex) {
+        }
+    }
+
+    /**
+     * reads one row of the result set for every advance
+     */
+    private static class Cursor extends Spliterators.AbstractSpliterator<Object[]> {
+
+        private final ResultSet result;
+        private final RowMapper rowMapper;
+        private final ResourceCloser closer;
+        private final boolean failOnError;
+
+        Cursor(ResultSet result, RowMapper rowMapper, ResourceCloser closer, boolean failOnError) {
+
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.result = result;
+            this.rowMapper = rowMapper;
+            this.closer = closer;
+            this.failOnError = failOnError;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Object[]> action) {
+
+            try {
+
+                // release the connection as soon as all rows are read
+                if (!this.result.next()) {
+
+                    this.closer.run();
+                    return false;
+                }
+
+                action.accept(this.rowMapper.map(this.result));
+                return true;
 
-            return null;
+            } catch (SQLException ex) {
+
+                // end the stream on error
+                this.closer.run();
+                if (this.failOnError) {
+
+                    throw new IllegalStateException(ex.getMessage(), ex);
+                }
+
+                Main.log.log(Level.WARNING, ex.getMessage(), ex);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * closes the resources of a cursor once
+     */
+    private static class ResourceCloser implements Runnable {
+
+        private final AutoCloseable[] resources;
+        private boolean closed = false;
+
+        ResourceCloser(AutoCloseable... resources) {
+
+            this.resources = resources;
+        }
+
+        @Override
+        public synchronized void run() {
+
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+
+            // close in reverse order of creation
+            for (int i = this.resources.length - 1; i >= 0; i--) {
+
+                if (this.resources[i] == null) {
+                    continue;
+                }
+
+                try {
+                    this.resources[i].close();
+                } catch (Exception ex) {
+
+                    Main.log.log(Level.WARNING, ex.getMessage(), ex);
+                }
+            }
         }
     }
 
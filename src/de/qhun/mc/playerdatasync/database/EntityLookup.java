@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+/**
+ * a request to find one entity of a repository by its primary value
+ *
+ * @author Wrath
+ * @param <Entity>
+ * @param <Primary>
+ */
+public class EntityLookup<Entity, Primary> {
+
+    // the repository of the entity
+    public final GenericRepository<Entity, Primary> repository;
+
+    // the primary value or list of primary values
+    public final Primary primary;
+
+    public EntityLookup(GenericRepository<Entity, Primary> repository, Primary primary) {
+
+        this.repository = repository;
+        this.primary = primary;
+    }
+}
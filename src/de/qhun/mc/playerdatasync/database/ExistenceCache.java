@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.database.domainmodel.DecoratedDomainModel;
+import de.qhun.mc.playerdatasync.database.domainmodel.DomainModelAttribute;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * knows which primary keys of one entity class have not been stored when the
+ * keys of all rows were loaded or by this server since then. keys stored by
+ * other servers are unknown, so an absent key is a hint only and never proves
+ * that no row exists.
+ *
+ * @author Wrath
+ */
+class ExistenceCache {
+
+    // the entity class of the keys
+    private final Class<?> entity;
+
+    // the filter of all existing keys, null until loaded
+    private volatile ExistenceFilter filter;
+
+    // keys that have been stored while loading the filter
+    private List<Long> storedWhileLoading;
+
+    ExistenceCache(Class<?> entity) {
+
+        this.entity = entity;
+    }
+
+    /**
+     * loads the keys of all rows. the cache answers nothing until the keys
+     * are loaded.
+     *
+     * @param databaseExecutor
+     * @param falsePositiveRate
+     */
+    void load(DatabaseExecutor databaseExecutor, double falsePositiveRate) {
+
+        synchronized (this) {
+
+            if (this.filter != null || this.storedWhileLoading != null) {
+                return;
+            }
+            this.storedWhileLoading = new ArrayList<>();
+        }
+
+        // only the hashes are kept while reading the table
+        List<DomainModelAttribute> primaryAttributes = DecoratedDomainModel.getPrimaryAttributes(this.entity);
+        long[] hashes = new long[1024];
+        int count = 0;
+
+        try (Stream<Object[]> rows = databaseExecutor.streamPrimaryKeys(this.entity)) {
+
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+
+                Object[] primaryValues = new Object[primaryAttributes.size()];
+                for (int i = 0; i < primaryValues.length; i++) {
+
+                    primaryValues[i] = row[primaryAttributes.get(i).position];
+                }
+
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                }
+                hashes[count++] = ExistenceFilter.hash(primaryValues);
+            }
+        } catch (RuntimeException ex) {
+
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+
+            synchronized (this) {
+                this.storedWhileLoading = null;
+            }
+            return;
+        }
+
+        // leave room for new players
+        ExistenceFilter loaded = new ExistenceFilter(Math.max(10000, count * 2L), falsePositiveRate);
+        for (int i = 0; i < count; i++) {
+
+            loaded.add(hashes[i]);
+        }
+
+        // publish together with the keys stored in the meantime
+        synchronized (this) {
+
+            this.storedWhileLoading.forEach(loaded::add);
+            this.storedWhileLoading = null;
+            this.filter = loaded;
+        }
+
+        Main.log.info(String.format("Loaded %d keys of %s", count, this.entity.getSimpleName()));
+    }
+
+    /**
+     * remembers that the key exists
+     *
+     * @param primaryValues the values of the primary attributes
+     */
+    void add(Object[] primaryValues) {
+
+        long hash = ExistenceFilter.hash(primaryValues);
+
+        ExistenceFilter current = this.filter;
+        if (current != null) {
+
+            current.add(hash);
+            return;
+        }
+
+        synchronized (this) {
+
+            if (this.filter != null) {
+
+                this.filter.add(hash);
+            } else if (this.storedWhileLoading != null) {
+
+                this.storedWhileLoading.add(hash);
+            }
+        }
+    }
+
+    /**
+     * checks if the key is unknown to this cache
+     *
+     * @param primaryValues the values of the primary attributes
+     * @return
+     */
+    boolean isAbsent(Object[] primaryValues) {
+
+        ExistenceFilter current = this.filter;
+
+        return current != null && !current.mightContain(ExistenceFilter.hash(primaryValues));
+    }
+}
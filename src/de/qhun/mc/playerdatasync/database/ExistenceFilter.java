@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a bloom filter of primary keys. if the filter does not contain a key, the
+ * entity does definitely not exist. keys can only be added.
+ *
+ * @author Wrath
+ */
+class ExistenceFilter {
+
+    // the bits of the filter
+    private final AtomicLongArray bits;
+    private final long bitCount;
+
+    // the amount of bits per key
+    private final int hashCount;
+
+    /**
+     * creates a filter for the given amount of keys
+     *
+     * @param expectedKeys
+     * @param falsePositiveRate
+     */
+    ExistenceFilter(long expectedKeys, double falsePositiveRate) {
+
+        // the optimal size and hash count of a bloom filter
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) this.bitCount / expectedKeys * Math.log(2)));
+    }
+
+    /**
+     * adds the hash of a key
+     *
+     * @param hash
+     */
+    void add(long hash) {
+
+        for (int i = 0; i < this.hashCount; i++) {
+
+            long bit = this.getBit(hash, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            while (((current = this.bits.get(word)) & mask) == 0
+                    && !this.bits.compareAndSet(word, current, current | mask)) {
+
+                // retry
+            }
+        }
+    }
+
+    /**
+     * checks if the key of the hash might exist
+     *
+     * @param hash
+     * @return false if the key does definitely not exist
+     */
+    boolean mightContain(long hash) {
+
+        for (int i = 0; i < this.hashCount; i++) {
+
+            long bit = this.getBit(hash, i);
+            if ((this.bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * get the i-th bit of the given hash
+     *
+     * @param hash
+     * @param i
+     * @return
+     */
+    private long getBit(long hash, int i) {
+
+        // double hashing with both halves of the hash
+        long combined = (hash & 0xffffffffL) + i * (hash >>> 32);
+
+        return (combined & Long.MAX_VALUE) % this.bitCount;
+    }
+
+    /**
+     * hashes the given primary values. the values are compared as strings,
+     * because a uuid is read as string from the database.
+     *
+     * @param primaryValues
+     * @return
+     */
+    static long hash(Object[] primaryValues) {
+
+        // 64 bit fnv-1a
+        long hash = 0xcbf29ce484222325L;
+        for (Object value : primaryValues) {
+
+            String string = String.valueOf(value);
+            for (int i = 0; i < string.length(); i++) {
+
+                hash ^= string.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+
+            // separate the values
+            hash ^= 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        // spread the bits, fnv is weak in the lower bits of short keys
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
@@ -17,14 +17,25 @@
 package de.qhun.mc.playerdatasync.database;
 
 import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.config.ExistenceFilterConfiguration;
+import de.qhun.mc.playerdatasync.config.WriteBehindConfiguration;
 import de.qhun.mc.playerdatasync.database.domainmodel.DomainModelAttribute;
 import de.qhun.mc.playerdatasync.database.domainmodel.DecoratedDomainModel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * a generic implementation of a repository
@@ -38,6 +49,51 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
     // the database holder
     protected static DatabaseAdapter database;
 
+    // the executor for asynchronous transactions
+    protected static ExecutorService executor;
+
+    // the settings of the batched writes
+    protected static WriteBehindConfiguration writeBehindConfiguration;
+
+    // the pending stores of this repository, null if writes are not delayed
+    private WriteBehindQueue writeBehindQueue;
+
+    // all created repositories
+    private static final List<GenericRepository<?, ?>> repositories = new CopyOnWriteArrayList<>();
+
+    // knows which entities do not exist
+    private final ExistenceCache existenceCache;
+
+    // the attribute values of the loaded and stored entities as they are in
+    // the database. entities are forgotten when they are not used anymore.
+    // the weak map compares them with equals, so entities must not override
+    // it, see the constructor.
+    private final Map<Entity, Object[]> snapshots = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // the loaded entities with a column that could not be read. storing them
+    // would overwrite the stored value
+    private final Set<Entity> unloadable = Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+
+    public GenericRepository() {
+
+        // two equal entities would share their snapshot
+        try {
+
+            Class<?> entityClass = this.getEntityClass();
+            if (entityClass.getMethod("equals", Object.class).getDeclaringClass() != Object.class
+                    || entityClass.getMethod("hashCode").getDeclaringClass() != Object.class) {
+
+                throw new Error("The entity " + entityClass.getSimpleName() + " must not override equals or hashCode!");
+            }
+        } catch (NoSuchMethodException ex) {
+
+            throw new Error(ex);
+        }
+
+        this.existenceCache = new ExistenceCache(this.getEntityClass());
+        GenericRepository.repositories.add(this);
+    }
+
     /**
      * get the current class of entity
      *
@@ -56,18 +112,341 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
     }
 
     /**
-     * saves an entity
+     * set the executor that runs asynchronous transactions
+     *
+     * @param executor
+     */
+    public static void setExecutor(ExecutorService executor) {
+
+        GenericRepository.executor = executor;
+    }
+
+    /**
+     * set the settings of the batched writes
+     *
+     * @param writeBehindConfiguration
+     */
+    public static void setWriteBehindConfiguration(WriteBehindConfiguration writeBehindConfiguration) {
+
+        GenericRepository.writeBehindConfiguration = writeBehindConfiguration;
+    }
+
+    /**
+     * loads the existing keys of every repository on the database executor if
+     * the existence filter is enabled. call this after all tables are created.
+     *
+     * @param configuration
+     */
+    public static void loadExistenceFilters(ExistenceFilterConfiguration configuration) {
+
+        if (!configuration.isEnabled()) {
+            return;
+        }
+
+        GenericRepository.repositories.forEach(repository -> {
+
+            GenericRepository.executor.execute(() -> repository.existenceCache.load(
+                    GenericRepository.database.query(),
+                    configuration.getFalsePositiveRate()
+            ));
+        });
+    }
+
+    /**
+     * get the current time of the database that is used for timestamps
+     *
+     * @return the time in milliseconds or -1 if it could not be read
+     */
+    public static long getDatabaseTime() {
+
+        return GenericRepository.database.query().currentTimeMillis();
+    }
+
+    /**
+     * writes all pending stores of every repository
+     *
+     * @return false if any store could not be written
+     */
+    public static boolean flushPendingStores() {
+
+        return WriteBehindQueue.flushAll();
+    }
+
+    /**
+     * writes all pending stores of every repository and stops delaying
+     * writes
+     */
+    public static void shutdownPendingStores() {
+
+        WriteBehindQueue.shutdown();
+    }
+
+    /**
+     * get the pending stores of this repository or null if writes are not
+     * delayed
+     *
+     * @return
+     */
+    private synchronized WriteBehindQueue getWriteBehindQueue() {
+
+        if (this.writeBehindQueue == null && GenericRepository.writeBehindConfiguration != null
+                && GenericRepository.writeBehindConfiguration.isEnabled()) {
+
+            this.writeBehindQueue = new WriteBehindQueue(
+                    this.getEntityClass(),
+                    GenericRepository.database.query(),
+                    GenericRepository.writeBehindConfiguration.getBatchSize(),
+                    GenericRepository.writeBehindConfiguration.getFlushInterval()
+            );
+        }
+
+        return this.writeBehindQueue;
+    }
+
+    /**
+     * saves the attributes of an entity that have been changed since it has
+     * been loaded or stored. nothing will be written if no attribute has
+     * changed. if writes are delayed, the entity will be written with the
+     * next batch. entities with a version are written at once and only if the
+     * stored row has not been changed since the entity has been loaded.
      *
      * @param entity
      * @return
      */
     @Override
-    public boolean store(Entity entity) {
+    public StoreResult store(Entity entity) {
 
-        return GenericRepository.database.query().replaceInto(
-                DecoratedDomainModel.getTableName((Class<Entity>) entity.getClass()),
-                DecoratedDomainModel.getAttributesWithValues(entity)
+        if (this.isUnloadable(entity)) {
+            return StoreResult.FAILED;
+        }
+
+        Object[] values = DecoratedDomainModel.getValues(entity);
+        List<DomainModelAttribute> columns = this.getChangedAttributes(entity, values);
+
+        // compare the version with the stored row
+        boolean versioned = DecoratedDomainModel.getVersionAttribute(entity.getClass()) != null;
+        if (versioned && !columns.isEmpty()) {
+
+            return this.compareAndSwap(entity, columns);
+        }
+
+        // the stored row is up to date, a pending store of other values must
+        // not be written anymore
+        WriteBehindQueue queue = versioned ? null : this.getWriteBehindQueue();
+        if (columns.isEmpty()) {
+
+            if (queue != null) {
+                queue.discard(entity);
+            }
+            return StoreResult.STORED;
+        }
+
+        // the entity exists from now on
+        this.existenceCache.add(DecoratedDomainModel.getPrimaryValues(entity));
+
+        // only the changed columns of an existing row will be written. the
+        // snapshot moves on after a successful write only, so the next store
+        // repeats every column of a failed one
+        if (queue != null) {
+
+            queue.enqueue(values, columns, () -> this.snapshots.put(entity, values));
+            return StoreResult.STORED;
+        }
+
+        if (GenericRepository.database.query().store(entity.getClass(), values, columns)) {
+
+            this.snapshots.put(entity, values);
+            return StoreResult.STORED;
+        }
+
+        return StoreResult.FAILED;
+    }
+
+    /**
+     * get the attributes whose values differ from the values of the entity
+     * when it has been loaded or stored
+     *
+     * @param entity
+     * @param values the current values of all attributes
+     * @return all attributes if the entity has not been loaded or stored
+     */
+    private List<DomainModelAttribute> getChangedAttributes(Entity entity, Object[] values) {
+
+        List<DomainModelAttribute> attributes = DecoratedDomainModel.getAttributes(entity.getClass());
+        Object[] snapshot = this.snapshots.get(entity);
+        if (snapshot == null) {
+
+            return attributes;
+        }
+
+        // arrays are compared by their content, timestamps are set by the
+        // database with every write
+        List<DomainModelAttribute> changedAttributes = attributes.stream()
+                .filter(attribute -> attribute.isTimestamp
+                || !Objects.deepEquals(snapshot[attribute.position], values[attribute.position]))
+                .collect(Collectors.toList());
+
+        return changedAttributes.stream().allMatch(attribute -> attribute.isTimestamp)
+                ? Collections.emptyList() : changedAttributes;
+    }
+
+    /**
+     * saves the given attributes of an entity with a version if the stored
+     * row still has the version of the entity. an entity that is not stored
+     * yet will be inserted. the version of the entity will be increased after
+     * writing it. a stored row with another version will not be changed, the
+     * entity has to be refreshed before it can be stored.
+     *
+     * @param entity
+     * @param columns the attributes to update
+     * @return
+     */
+    private StoreResult compareAndSwap(Entity entity, List<DomainModelAttribute> columns) {
+
+        Class<?> entityClass = entity.getClass();
+        DomainModelAttribute version = DecoratedDomainModel.getVersionAttribute(entityClass);
+        Object[] values = DecoratedDomainModel.getValues(entity);
+        Object[] primaryValues = DecoratedDomainModel.getPrimaryValues(entity);
+        long expectedVersion = values[version.position] != null ? (long) values[version.position] : 0;
+
+        // update the row if nobody has changed it in the meantime
+        DatabaseExecutor query = GenericRepository.database.query();
+        if (!this.existenceCache.isAbsent(primaryValues)) {
+
+            int changedRows = query.compareAndSwap(entityClass, values, columns);
+            if (changedRows < 0) {
+
+                return StoreResult.FAILED;
+            } else if (changedRows > 0) {
+
+                version.setFieldValue(entity, expectedVersion + 1);
+                this.snapshots.put(entity, DecoratedDomainModel.getValues(entity));
+                return StoreResult.STORED;
+            }
+
+            // the row exists with another version
+            if (query.exists(entityClass, primaryValues)) {
+
+                return StoreResult.CONFLICT;
+            }
+        }
+
+        // not stored yet
+        values[version.position] = expectedVersion + 1;
+        if (query.insert(DecoratedDomainModel.getTableName(entityClass), DecoratedDomainModel.getAttributes(entityClass), values)) {
+
+            this.existenceCache.add(primaryValues);
+            version.setFieldValue(entity, expectedVersion + 1);
+            this.snapshots.put(entity, DecoratedDomainModel.getValues(entity));
+            return StoreResult.STORED;
+        }
+
+        // another server has inserted it in the meantime
+        return query.exists(entityClass, primaryValues) ? StoreResult.CONFLICT : StoreResult.FAILED;
+    }
+
+    /**
+     * reads the stored row of an entity again, eg. after another server has
+     * stored a newer version. the values and the version of the entity will
+     * be replaced by the stored ones.
+     *
+     * @param entity
+     * @return false if the entity is not stored or could not be read
+     */
+    @Override
+    public boolean refresh(Entity entity) {
+
+        // read a pending store from the database
+        WriteBehindQueue queue = this.getWriteBehindQueue();
+        if (queue != null && queue.hasPending()) {
+
+            queue.flush();
+        }
+
+        List<Object[]> rows = GenericRepository.database.query().findByPrimary(
+                entity.getClass(),
+                DecoratedDomainModel.getPrimaryValues(entity)
         );
+
+        if (rows.isEmpty()) {
+            return false;
+        }
+
+        this.setValues(entity, rows.get(0));
+        if (this.unloadable.contains(entity)) {
+            return false;
+        }
+
+        // the next store writes the changes on top of the stored row
+        this.snapshots.put(entity, DecoratedDomainModel.getValues(entity));
+
+        return true;
+    }
+
+    /**
+     * adds an amount to an attribute of a stored entity without reading it
+     * and sets the given attributes. the database changes the value, so
+     * concurrent changes of other servers are kept. an entity that is not
+     * stored yet will be inserted with its current values.
+     *
+     * @param entity
+     * @param attributeName the attribute to add the amount to
+     * @param amount
+     * @param attributeNames the attributes to set
+     * @return
+     */
+    @Override
+    public boolean increment(Entity entity, String attributeName, Object amount, List<String> attributeNames) {
+
+        // a pending store must not overwrite the change
+        WriteBehindQueue queue = this.getWriteBehindQueue();
+        if (queue != null && queue.hasPending()) {
+
+            queue.flush();
+        }
+
+        Class<?> entityClass = entity.getClass();
+        Object[] values = DecoratedDomainModel.getValues(entity);
+        DomainModelAttribute column = DecoratedDomainModel.getAttributes(entityClass).stream()
+                .filter(attribute -> attribute.attributeName.equals(attributeName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown attribute " + attributeName));
+        List<DomainModelAttribute> columns = DecoratedDomainModel.getAttributes(entityClass).stream()
+                .filter(attribute -> attributeNames.contains(attribute.attributeName))
+                .collect(Collectors.toList());
+
+        DatabaseExecutor query = GenericRepository.database.query();
+        Object[] primaryValues = DecoratedDomainModel.getPrimaryValues(entity);
+        if (!this.existenceCache.isAbsent(primaryValues) && query.increment(entityClass, values, column, amount, columns)) {
+
+            return true;
+        }
+
+        // not stored yet
+        if (this.isUnloadable(entity)) {
+            return false;
+        }
+
+        if (query.insert(DecoratedDomainModel.getTableName(entityClass), DecoratedDomainModel.getAttributes(entityClass), values)) {
+
+            this.existenceCache.add(primaryValues);
+            return true;
+        }
+
+        // another server inserted it in the meantime
+        return query.increment(entityClass, values, column, amount, columns);
+    }
+
+    /**
+     * saves an entity on the database executor
+     *
+     * @param entity
+     * @return
+     */
+    @Override
+    public CompletableFuture<StoreResult> storeAsync(Entity entity) {
+
+        return CompletableFuture.supplyAsync(() -> this.store(entity), GenericRepository.executor);
     }
 
     /**
@@ -79,9 +458,20 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
     @Override
     public boolean remove(Entity entity) {
 
-        return GenericRepository.database.query().delete(
-                DecoratedDomainModel.getTableName((Class<Entity>) entity.getClass()),
-                DecoratedDomainModel.getAttributesWithValues(entity)
+        // a pending store must not bring the entity back
+        WriteBehindQueue queue = this.getWriteBehindQueue();
+        if (queue != null) {
+
+            queue.discard(entity);
+        }
+
+        // a new store has to write the whole entity
+        this.snapshots.remove(entity);
+
+        // only the primary attributes identify the row
+        return GenericRepository.database.query().remove(
+                entity.getClass(),
+                DecoratedDomainModel.getPrimaryValues(entity)
         );
     }
 
@@ -94,12 +484,66 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
     @Override
     public boolean update(Entity entity) {
 
+        if (this.isUnloadable(entity)) {
+            return false;
+        }
+
         return GenericRepository.database.query().update(
                 DecoratedDomainModel.getTableName((Class<Entity>) entity.getClass()),
-                DecoratedDomainModel.getAttributesWithValues(entity)
+                DecoratedDomainModel.getAttributes(entity.getClass()),
+                DecoratedDomainModel.getValues(entity)
         );
     }
 
+    /**
+     * get one page of entities ordered by the given attribute and the primary
+     * attributes. the page starts after the given value and primary, eg. the
+     * last entity of the previous page. without a primary the page starts
+     * after all entities with the given value.
+     *
+     * @param attributeName
+     * @param value
+     * @param primary can be null
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<Entity> findAfter(String attributeName, Object value, Primary primary, int limit) {
+
+        // read pending stores from the database
+        WriteBehindQueue queue = this.getWriteBehindQueue();
+        if (queue != null && queue.hasPending()) {
+
+            queue.flush();
+        }
+
+        // order by the attribute, the primary attributes make the order unique
+        List<DomainModelAttribute> orderAttributes = new ArrayList<>();
+        DecoratedDomainModel.getAttributes(this.getEntityClass()).stream()
+                .filter(attribute -> attribute.attributeName.equals(attributeName))
+                .forEach(orderAttributes::add);
+        if (orderAttributes.isEmpty()) {
+
+            throw new IllegalArgumentException("Unknown attribute " + attributeName);
+        }
+        orderAttributes.addAll(DecoratedDomainModel.getPrimaryAttributes(this.getEntityClass()));
+
+        // the bound values in the same order
+        List<Object> bounds = new ArrayList<>();
+        bounds.add(value);
+        if (primary != null) {
+
+            bounds.addAll(Arrays.asList(this.getPrimaryValues(primary)));
+        }
+
+        List<Entity> entities = new ArrayList<>();
+        GenericRepository.database.query()
+                .findPage(this.getEntityClass(), orderAttributes, bounds.toArray(), limit)
+                .forEach(row -> entities.add(this.transformResultToEntity(row)));
+
+        return entities;
+    }
+
     /**
      * get all entities
      *
@@ -108,9 +552,15 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
     @Override
     public List<Entity> findAll() {
 
+        // read pending stores from the database
+        WriteBehindQueue queue = this.getWriteBehindQueue();
+        if (queue != null && queue.hasPending()) {
+
+            queue.flush();
+        }
+
         // get all entities
-        List<List<DomainModelAttribute>> rows = GenericRepository.database.query().get(
-                DecoratedDomainModel.getTableName(this.getEntityClass()),
+        List<Object[]> rows = GenericRepository.database.query().findAll(
                 this.getEntityClass()
         );
 
@@ -132,64 +582,78 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
     }
 
     /**
-     * find one entity by its primary attribute/attributes
+     * streams all entities. the rows will be read with a database cursor and
+     * transformed while consuming the stream, so the stream must be closed to
+     * release the database connection.
      *
-     * @param primary
      * @return
      */
     @Override
-    public Entity findByPrimary(Primary primary) {
+    public Stream<Entity> streamAll() {
 
-        List<DomainModelAttribute> queryList = new ArrayList<>();
+        // read pending stores from the database
+        WriteBehindQueue queue = this.getWriteBehindQueue();
+        if (queue != null && queue.hasPending()) {
 
-        // primary can be a normal object or a list
-        // if it is a list, the primary contains more values
-        // we should extract them
-        if (primary instanceof List) {
+            queue.flush();
+        }
 
-            // cast to list
-            List<?> primaryList = (List<?>) primary;
+        return GenericRepository.database.query()
+                .streamAll(this.getEntityClass())
+                .map(this::transformResultToEntity);
+    }
 
-            // get primary columns and
-            // fill the values. the primary index of the decorator is the
-            // index of the list!
-            queryList = DecoratedDomainModel
-                    .getAttributes(this.getEntityClass())
-                    .stream().filter(attribute -> attribute.isPrimary)
-                    .map(primaryAttribute -> {
+    /**
+     * calls the consumer for every entity while streaming them from the
+     * database. the connection is in use until all entities have been
+     * consumed, so the consumer should not wait for other queries.
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEach(Consumer<Entity> consumer) {
+
+        try (Stream<Entity> entities = this.streamAll()) {
 
-                        // get the index from the decorator and use this
-                        // index to get the list item as value
-                        primaryAttribute.value = primaryList.get(
-                                primaryAttribute.field.getAnnotation(
-                                        de.qhun.mc.playerdatasync.database.decorators.Primary.class
-                                ).index()
-                        );
+            entities.forEach(consumer);
+        }
+    }
 
-                        return primaryAttribute;
-                    })
-                    .collect(Collectors.toList());
+    /**
+     * get all entities on the database executor
+     *
+     * @return
+     */
+    @Override
+    public CompletableFuture<List<Entity>> findAllAsync() {
 
-        } else {
+        return CompletableFuture.supplyAsync(this::findAll, GenericRepository.executor);
+    }
 
-            // get primary column name
-            DomainModelAttribute<Primary> primaryAttribute = DecoratedDomainModel
-                    .getAttributes(this.getEntityClass())
-                    .stream().filter(attribute -> attribute.isPrimary)
-                    .findFirst().get();
+    /**
+     * find one entity by its primary attribute/attributes
+     *
+     * @param primary
+     * @return
+     */
+    @Override
+    public Entity findByPrimary(Primary primary) {
 
-            // add the primary value
-            primaryAttribute.value = primary;
+        // read a pending store from the database
+        WriteBehindQueue queue = this.getWriteBehindQueue();
+        if (queue != null && queue.isPending(primary)) {
 
-            // stack this up
-            queryList.add(primaryAttribute);
+            queue.flush();
         }
 
+        // the existence filter does not know the keys stored by other
+        // servers, so a load always asks the database
+        Object[] primaryValues = this.getPrimaryValues(primary);
+
         // search query!
-        List<List<DomainModelAttribute>> rows = GenericRepository.database.query().get(
-                DecoratedDomainModel.getTableName(this.getEntityClass()),
+        List<Object[]> rows = GenericRepository.database.query().findByPrimary(
                 this.getEntityClass(),
-                queryList
+                primaryValues
         );
 
         // null for an empty result set
@@ -200,6 +664,94 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
         return this.transformResultToEntity(rows.get(0));
     }
 
+    /**
+     * find the entities of multiple repositories with one borrowed
+     * connection
+     *
+     * @param lookups
+     * @return the entity or null per lookup in the same order
+     */
+    public static List<Object> findByPrimaries(List<EntityLookup<?, ?>> lookups) {
+
+        List<Class<?>> entities = new ArrayList<>();
+        List<Object[]> primaryValues = new ArrayList<>();
+        List<Integer> queried = new ArrayList<>();
+
+        for (int i = 0; i < lookups.size(); i++) {
+
+            Object[] values = GenericRepository.prepareLookup(lookups.get(i));
+            if (values != null) {
+
+                entities.add(lookups.get(i).repository.getEntityClass());
+                primaryValues.add(values);
+                queried.add(i);
+            }
+        }
+
+        // search query!
+        List<Object[]> rows = GenericRepository.database.query().findByPrimaries(entities, primaryValues);
+
+        // transform the found rows, unknown keys stay null
+        List<Object> found = new ArrayList<>();
+        lookups.forEach(lookup -> found.add(null));
+        for (int i = 0; i < rows.size(); i++) {
+
+            if (rows.get(i) != null) {
+
+                int index = queried.get(i);
+                found.set(index, lookups.get(index).repository.transformResultToEntity(rows.get(i)));
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * find the entities of multiple repositories on the database executor
+     *
+     * @param lookups
+     * @return the entity or null per lookup in the same order
+     */
+    public static CompletableFuture<List<Object>> findByPrimariesAsync(List<EntityLookup<?, ?>> lookups) {
+
+        return CompletableFuture.supplyAsync(() -> GenericRepository.findByPrimaries(lookups), GenericRepository.executor);
+    }
+
+    /**
+     * prepares the lookup of one entity
+     *
+     * @param lookup
+     * @return the primary values
+     */
+    private static <Entity, Primary> Object[] prepareLookup(EntityLookup<Entity, Primary> lookup) {
+
+        GenericRepository<Entity, Primary> repository = lookup.repository;
+
+        // read a pending store from the database
+        WriteBehindQueue queue = repository.getWriteBehindQueue();
+        if (queue != null && queue.isPending(lookup.primary)) {
+
+            queue.flush();
+        }
+
+        // the existence filter does not know the keys stored by other
+        // servers, so a load always asks the database
+        return repository.getPrimaryValues(lookup.primary);
+    }
+
+    /**
+     * find one entity by its primary attribute/attributes on the database
+     * executor
+     *
+     * @param primary
+     * @return
+     */
+    @Override
+    public CompletableFuture<Entity> findByPrimaryAsync(Primary primary) {
+
+        return CompletableFuture.supplyAsync(() -> this.findByPrimary(primary), GenericRepository.executor);
+    }
+
     /**
      * find one entity by its primary attribute/attributes or creates an empty
      * model
@@ -228,16 +780,58 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
     @Override
     public boolean has(Primary primary) {
 
-        return false;
+        // the existence filter is a hint only, keys that have been stored by
+        // other servers since the filter has been loaded are unknown
+        Object[] primaryValues = this.getPrimaryValues(primary);
+        if (this.existenceCache.isAbsent(primaryValues)) {
+            return false;
+        }
+
+        // a pending store exists allready
+        WriteBehindQueue queue = this.getWriteBehindQueue();
+        if (queue != null && queue.isPending(primary)) {
+            return true;
+        }
+
+        return GenericRepository.database.query().exists(this.getEntityClass(), primaryValues);
     }
 
     /**
-     * transforms a Map<string,object> to an entity object
+     * get the values of the primary attributes in the order of the attributes
      *
-     * @param attributes
+     * @param primary
      * @return
      */
-    protected Entity transformResultToEntity(List<DomainModelAttribute> attributes) {
+    protected Object[] getPrimaryValues(Primary primary) {
+
+        List<DomainModelAttribute> primaryAttributes = DecoratedDomainModel.getPrimaryAttributes(this.getEntityClass());
+        Object[] values = new Object[primaryAttributes.size()];
+
+        // primary can be a normal object or a list
+        // if it is a list, the primary contains more values.
+        // the primary index of the decorator is the index of the list!
+        if (primary instanceof List) {
+
+            List<?> primaryList = (List<?>) primary;
+            for (int i = 0; i < values.length; i++) {
+
+                values[i] = primaryList.get(primaryAttributes.get(i).primaryIndex);
+            }
+        } else if (values.length > 0) {
+
+            values[0] = primary;
+        }
+
+        return values;
+    }
+
+    /**
+     * transforms the values of one row to an entity object
+     *
+     * @param values the values in the order of the attributes
+     * @return
+     */
+    protected Entity transformResultToEntity(Object[] values) {
 
         // create empty entity
         Entity entity = DecoratedDomainModel.createEmptyInstance(this.getEntityClass());
@@ -247,22 +841,76 @@ public abstract class GenericRepository<Entity, Primary> implements Repository<E
             return entity;
         }
 
-        // add fields
-        attributes.forEach(attribute -> {
+        this.setValues(entity, values);
+
+        // remember the stored values to find the changed attributes
+        this.snapshots.put(entity, DecoratedDomainModel.getValues(entity));
+
+        return entity;
+    }
+
+    /**
+     * checks if the entity has a column that could not be read when it has
+     * been loaded
+     *
+     * @param entity
+     * @return
+     */
+    private boolean isUnloadable(Entity entity) {
+
+        if (!this.unloadable.contains(entity)) {
+            return false;
+        }
+
+        Main.log.warning(String.format(
+                "The %s %s could not be read completely and will not be stored!",
+                entity.getClass().getSimpleName(),
+                Arrays.toString(DecoratedDomainModel.getPrimaryValues(entity))
+        ));
+        return true;
+    }
+
+    /**
+     * sets the values of one row to the fields of an entity. an entity with
+     * an unreadable value will be marked as unloadable.
+     *
+     * @param entity
+     * @param values the values in the order of the attributes
+     */
+    private void setValues(Entity entity, Object[] values) {
+
+        // the whole row has been read
+        this.unloadable.remove(entity);
+
+        // add fields, a refreshed entity must not keep an old value of a
+        // column that is null now. primitive fields keep their value.
+        List<DomainModelAttribute> attributes = DecoratedDomainModel.getAttributes(this.getEntityClass());
+        for (int i = 0; i < values.length; i++) {
+
+            if (values[i] == RowMapper.UNREADABLE) {
+
+                this.unloadable.add(entity);
+                continue;
+            }
+
+            DomainModelAttribute attribute = attributes.get(i);
+            if (values[i] == null) {
+
+                if (!attribute.field.getType().isPrimitive()) {
+                    attribute.setFieldValue(entity, null);
+                }
+                continue;
+            }
 
             // set value of the given field
             try {
-                Class<?> attributeType = attribute.field.getType();
 
-                attribute.field.setAccessible(true);
-                attribute.field.set(entity, DatatypeCast.cast(attribute.value, attributeType));
-            } catch (IllegalAccessException | IllegalArgumentException | SecurityException ex) {
+                attribute.setFieldValue(entity, DatatypeCast.cast(values[i], attribute.field.getType()));
+            } catch (IllegalArgumentException ex) {
 
                 Main.log.warning("Cannot set the domain model field!");
                 Main.log.log(Level.WARNING, ex.getMessage(), ex);
             }
-        });
-
-        return entity;
+        }
     }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * a physical database connection that is managed by the connection pool
+ *
+ * @author Wrath
+ */
+class PooledConnection {
+
+    // the pool that owns this connection
+    private final ConnectionPool pool;
+
+    // the real jdbc connection
+    private final Connection connection;
+
+    // the prepared statements of this connection
+    private final StatementCache statementCache;
+
+    // the time of the last usage in milliseconds
+    private volatile long lastUsed;
+
+    // borrow information for the leak detection
+    private volatile long borrowedAt;
+    private volatile Throwable borrowedBy;
+    private volatile boolean leakReported;
+
+    // true if the connection reported a connection error
+    private volatile boolean broken = false;
+
+    PooledConnection(ConnectionPool pool, Connection connection, int statementCacheSize) {
+
+        this.pool = pool;
+        this.connection = connection;
+        this.statementCache = new StatementCache(connection, statementCacheSize);
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * get the real jdbc connection
+     *
+     * @return
+     */
+    Connection getConnection() {
+
+        return this.connection;
+    }
+
+    /**
+     * marks this connection as borrowed and creates a new handle for the
+     * borrower. closing the handle will return this connection to the pool.
+     *
+     * @param captureBorrower remember the stack of the borrower for the leak
+     * detection
+     * @return
+     */
+    Connection borrow(boolean captureBorrower) {
+
+        this.borrowedAt = System.currentTimeMillis();
+        this.borrowedBy = captureBorrower ? new Throwable("Connection borrowed here") : null;
+        this.leakReported = false;
+
+        return (Connection) Proxy.newProxyInstance(
+                PooledConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Handle()
+        );
+    }
+
+    /**
+     * marks this connection as idle
+     */
+    void markIdle() {
+
+        this.lastUsed = System.currentTimeMillis();
+        this.borrowedBy = null;
+    }
+
+    /**
+     * resets the connection state before it will be reused
+     *
+     * @throws SQLException
+     */
+    void reset() throws SQLException {
+
+        if (!this.connection.getAutoCommit()) {
+
+            this.connection.rollback();
+            this.connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * closes the physical connection
+     */
+    void closePhysical() {
+
+        this.statementCache.close();
+
+        try {
+            this.connection.close();
+        } catch (SQLException ex) {
+
+            // the connection is gone anyway
+        }
+    }
+
+    long getLastUsed() {
+
+        return this.lastUsed;
+    }
+
+    long getBorrowedAt() {
+
+        return this.borrowedAt;
+    }
+
+    Throwable getBorrowedBy() {
+
+        return this.borrowedBy;
+    }
+
+    boolean isLeakReported() {
+
+        return this.leakReported;
+    }
+
+    void setLeakReported() {
+
+        this.leakReported = true;
+    }
+
+    boolean isBroken() {
+
+        return this.broken;
+    }
+
+    /**
+     * the handle that will be given to the borrower. it forwards every call to
+     * the physical connection except close which returns the connection to the
+     * pool.
+     */
+    private class Handle implements InvocationHandler {
+
+        private boolean closed = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            switch (method.getName()) {
+
+                case "close":
+                    if (!this.closed) {
+
+                        this.closed = true;
+                        PooledConnection.this.pool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return this.closed || PooledConnection.this.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + PooledConnection.this.connection.toString();
+                default:
+                    break;
+            }
+
+            // the handle must not be used after close
+            if (this.closed) {
+
+                throw new SQLException("The connection has allready been returned to the pool");
+            }
+
+            // statements with plain sql are served from the cache
+            if ("prepareStatement".equals(method.getName()) && args.length == 1) {
+
+                return PooledConnection.this.statementCache.prepare((String) args[0]);
+            }
+
+            try {
+
+                return method.invoke(PooledConnection.this.connection, args);
+            } catch (InvocationTargetException ex) {
+
+                // sql state class 08 marks a connection exception
+                if (ex.getCause() instanceof SQLException) {
+
+                    String state = ((SQLException) ex.getCause()).getSQLState();
+                    if (state != null && state.startsWith("08")) {
+
+                        PooledConnection.this.broken = true;
+                    }
+                }
+
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.config.QueryStatisticsConfiguration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * collects the execution time of every sql template and logs slow queries.
+ * bound values are never logged.
+ *
+ * @author Wrath
+ */
+public class QueryStatistics {
+
+    // the timings by sql template
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    // queries slower than this will be logged
+    private volatile long slowQueryThreshold = TimeUnit.MILLISECONDS.toNanos(250);
+
+    // the share of slow queries that will be logged
+    private volatile double slowQuerySampleRate = 1;
+
+    /**
+     * apply the given configuration
+     *
+     * @param configuration
+     */
+    public void setConfiguration(QueryStatisticsConfiguration configuration) {
+
+        this.slowQueryThreshold = TimeUnit.MILLISECONDS.toNanos(configuration.getSlowQueryThreshold());
+        this.slowQuerySampleRate = configuration.getSlowQuerySampleRate();
+    }
+
+    /**
+     * record one execution of the given sql template
+     *
+     * @param query
+     * @param nanos
+     */
+    public void record(String query, long nanos) {
+
+        this.histograms.computeIfAbsent(query, key -> new Histogram()).record(nanos);
+
+        // log slow queries, but only a sample of them
+        if (nanos >= this.slowQueryThreshold && ThreadLocalRandom.current().nextDouble() < this.slowQuerySampleRate) {
+
+            Main.log.warning(String.format(
+                    "Slow query took %d ms: %s",
+                    TimeUnit.NANOSECONDS.toMillis(nanos), query
+            ));
+        }
+    }
+
+    /**
+     * get all recorded sql templates
+     *
+     * @return
+     */
+    public Set<String> getQueries() {
+
+        return Collections.unmodifiableSet(this.histograms.keySet());
+    }
+
+    /**
+     * get the timings of the given sql template or null if it has not been
+     * executed
+     *
+     * @param query
+     * @return
+     */
+    public Histogram getHistogram(String query) {
+
+        return this.histograms.get(query);
+    }
+
+    /**
+     * logs the timings of every sql template
+     */
+    public void logSummary() {
+
+        this.histograms.forEach((query, histogram) -> {
+
+            Main.log.info(String.format(
+                    "%d queries, avg %.2f ms, p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms: %s",
+                    histogram.getCount(),
+                    histogram.getMean() / 1e6,
+                    histogram.getPercentile(50) / 1e6,
+                    histogram.getPercentile(95) / 1e6,
+                    histogram.getPercentile(99) / 1e6,
+                    histogram.getMax() / 1e6,
+                    query
+            ));
+        });
+    }
+
+    /**
+     * a lock free latency histogram. every power of two is split into two
+     * buckets, so a percentile is at most 50% above the real value.
+     */
+    public static class Histogram {
+
+        // the smallest tracked value is 1 microsecond
+        private static final int SHIFT = 10;
+
+        // enough buckets for more than an hour
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * record one duration in nanoseconds
+         *
+         * @param nanos
+         */
+        void record(long nanos) {
+
+            this.buckets.incrementAndGet(Histogram.getBucket(nanos));
+            this.count.increment();
+            this.total.add(nanos);
+
+            long currentMax;
+            while (nanos > (currentMax = this.max.get()) && !this.max.compareAndSet(currentMax, nanos)) {
+
+                // retry
+            }
+        }
+
+        /**
+         * get the amount of recorded durations
+         *
+         * @return
+         */
+        public long getCount() {
+
+            return this.count.sum();
+        }
+
+        /**
+         * get the average duration in nanoseconds
+         *
+         * @return
+         */
+        public double getMean() {
+
+            long currentCount = this.count.sum();
+            return currentCount == 0 ? 0 : (double) this.total.sum() / currentCount;
+        }
+
+        /**
+         * get the longest duration in nanoseconds
+         *
+         * @return
+         */
+        public long getMax() {
+
+            return this.max.get();
+        }
+
+        /**
+         * get the upper bound of the given percentile in nanoseconds
+         *
+         * @param percentile between 0 and 100
+         * @return
+         */
+        public long getPercentile(double percentile) {
+
+            long[] counts = new long[BUCKETS];
+            long sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+
+                counts[i] = this.buckets.get(i);
+                sum += counts[i];
+            }
+
+            if (sum == 0) {
+                return 0;
+            }
+
+            // the rank of the requested duration
+            long rank = (long) Math.ceil(sum * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+
+                    return Math.min(Histogram.getUpperBound(i), this.max.get());
+                }
+            }
+
+            return this.max.get();
+        }
+
+        /**
+         * get the bucket of the given duration
+         *
+         * @param nanos
+         * @return
+         */
+        private static int getBucket(long nanos) {
+
+            long value = Math.max(1, nanos >> SHIFT);
+
+            // two buckets per power of two
+            int log = 63 - Long.numberOfLeadingZeros(value);
+            int half = log > 0 && (value & (1L << (log - 1))) != 0 ? 1 : 0;
+
+            return Math.min(BUCKETS - 1, log * 2 + half);
+        }
+
+        /**
+         * get the largest duration of the given bucket in nanoseconds
+         *
+         * @param bucket
+         * @return
+         */
+        private static long getUpperBound(int bucket) {
+
+            int log = bucket / 2;
+            long upper = bucket % 2 == 0 ? (3L << log) >> 1 : 2L << log;
+
+            return Math.max(1, upper) << SHIFT;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import de.qhun.mc.playerdatasync.database.domainmodel.DomainModelAttribute;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * the precompiled sql statements of one entity. the parameters of the
+ * statements are in the order of the entity attributes.
+ *
+ * @author Wrath
+ */
+public class QueryTemplates {
+
+    // the maximum amount of cached statements per kind of partial statement
+    private static final int MAX_PARTIAL_STATEMENTS = 64;
+
+    // the dialect that compiles the partial statements
+    private final DatabaseDialect dialect;
+
+    // the table of the entity
+    public final String tableName;
+
+    // select one row, bind the primary attributes
+    public final String selectByPrimary;
+
+    // select every row, no parameters
+    public final String selectAll;
+
+    // insert or update one row, bind all attributes
+    public final String upsert;
+
+    // delete one row, bind the primary attributes
+    public final String deleteByPrimary;
+
+    // check if one row exists, bind the primary attributes
+    public final String existsByPrimary;
+
+    // select the primary attributes of every row, no parameters
+    public final String selectPrimaryKeys;
+
+    // the compiled partial statements by their columns
+    private final Map<List<DomainModelAttribute>, String> partialUpserts = QueryTemplates.createCache();
+    private final Map<List<DomainModelAttribute>, String> compareAndSwaps = QueryTemplates.createCache();
+    private final Map<List<DomainModelAttribute>, String> increments = QueryTemplates.createCache();
+
+    public QueryTemplates(DatabaseDialect dialect, String tableName, List<DomainModelAttribute> attributes) {
+
+        List<DomainModelAttribute> primary = attributes.stream()
+                .filter(attribute -> attribute.isPrimary)
+                .collect(Collectors.toList());
+
+        this.dialect = dialect;
+        this.tableName = tableName;
+        this.selectByPrimary = dialect.get(tableName, primary);
+        this.selectAll = dialect.get(tableName, new ArrayList<>());
+        this.upsert = dialect.upsert(tableName, attributes, attributes);
+        this.deleteByPrimary = primary.isEmpty() ? null : dialect.delete(tableName, primary);
+        this.existsByPrimary = primary.isEmpty() ? null : dialect.exists(tableName, primary);
+        this.selectPrimaryKeys = primary.isEmpty() ? null : dialect.getColumns(tableName, primary);
+    }
+
+    /**
+     * get the statement that inserts one row or updates the given columns of
+     * the stored row, bind all attributes
+     *
+     * @param attributes all attributes of the entity
+     * @param columns the attributes to update
+     * @return
+     */
+    public String upsert(List<DomainModelAttribute> attributes, List<DomainModelAttribute> columns) {
+
+        return this.partialUpserts.computeIfAbsent(
+                new ArrayList<>(columns),
+                key -> this.dialect.upsert(this.tableName, attributes, key)
+        );
+    }
+
+    /**
+     * get the statement that updates the given columns if the row has the
+     * expected version
+     *
+     * @param version
+     * @param attributes the set attributes, the primary attributes and the
+     * version in the order of their parameters
+     * @return
+     */
+    public String compareAndSwap(DomainModelAttribute version, List<DomainModelAttribute> attributes) {
+
+        return this.compareAndSwaps.computeIfAbsent(
+                new ArrayList<>(attributes),
+                key -> this.dialect.compareAndSwap(this.tableName, version, key)
+        );
+    }
+
+    /**
+     * get the statement that adds an amount to a column and sets the given
+     * columns
+     *
+     * @param column
+     * @param attributes the amount, the set attributes and the primary
+     * attributes in the order of their parameters
+     * @return
+     */
+    public String increment(DomainModelAttribute column, List<DomainModelAttribute> attributes) {
+
+        // the same attributes can be used with another incremented column
+        List<DomainModelAttribute> key = new ArrayList<>(attributes.size() + 1);
+        key.add(column);
+        key.addAll(attributes);
+
+        return this.increments.computeIfAbsent(
+                key,
+                ignored -> this.dialect.increment(this.tableName, column, attributes)
+        );
+    }
+
+    /**
+     * creates a least recently used cache of statements
+     *
+     * @return
+     */
+    private static Map<List<DomainModelAttribute>, String> createCache() {
+
+        return Collections.synchronizedMap(new LinkedHashMap<List<DomainModelAttribute>, String>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<DomainModelAttribute>, String> eldest) {
+
+                return this.size() > MAX_PARTIAL_STATEMENTS;
+            }
+        });
+    }
+}
@@ -17,6 +17,9 @@
 package de.qhun.mc.playerdatasync.database;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * a basic repository pattern interface for storing information
@@ -27,15 +30,31 @@ import java.util.List;
  */
 public interface Repository<Entity extends Object, Primary> {
 
-    public boolean store(Entity entity);
+    public StoreResult store(Entity entity);
+
+    public boolean increment(Entity entity, String attributeName, Object amount, List<String> attributeNames);
 
     public boolean remove(Entity entity);
     
     public boolean update(Entity entity);
 
+    public boolean refresh(Entity entity);
+
     public List<Entity> findAll();
 
+    public Stream<Entity> streamAll();
+
+    public List<Entity> findAfter(String attributeName, Object value, Primary primary, int limit);
+
+    public void forEach(Consumer<Entity> consumer);
+
     public Entity findByPrimary(Primary primary);
 
     public boolean has(Primary primary);
+
+    public CompletableFuture<StoreResult> storeAsync(Entity entity);
+
+    public CompletableFuture<List<Entity>> findAllAsync();
+
+    public CompletableFuture<Entity> findByPrimaryAsync(Primary primary);
 }
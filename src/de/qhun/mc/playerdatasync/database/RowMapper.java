@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.database.decorators.ColumnType;
+import de.qhun.mc.playerdatasync.database.domainmodel.DecoratedDomainModel;
+import de.qhun.mc.playerdatasync.database.domainmodel.DomainModelAttribute;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * reads the rows of one result set shape into value arrays in the order of the
+ * entity attributes. the columns will be resolved once from the result set
+ * metadata.
+ *
+ * @author Wrath
+ */
+class RowMapper {
+
+    // the value of a column that could not be read. an entity with such a
+    // value must not be stored, the stored value would be lost
+    static final Object UNREADABLE = new Object();
+
+    // the amount of entity attributes
+    private final int attributeCount;
+
+    // the attribute of every result column, null for unknown columns
+    private final DomainModelAttribute[] columns;
+
+    RowMapper(Class<?> entity, ResultSetMetaData metadata) throws SQLException {
+
+        // index the attributes by their column name
+        List<DomainModelAttribute> entityAttributes = DecoratedDomainModel.getAttributes(entity);
+        Map<String, DomainModelAttribute> attributes = new HashMap<>();
+        entityAttributes.forEach(attribute -> {
+
+            attributes.put(attribute.columnName, attribute);
+        });
+        this.attributeCount = entityAttributes.size();
+
+        // resolve every column. result set columns begin by 1
+        this.columns = new DomainModelAttribute[metadata.getColumnCount()];
+        for (int i = 0; i < this.columns.length; i++) {
+
+            String columnName = metadata.getColumnLabel(i + 1);
+            this.columns[i] = attributes.get(columnName);
+
+            if (this.columns[i] == null) {
+
+                Main.log.warning(String.format(
+                        "The column %s is not an attribute of %s and will be ignored!",
+                        columnName, entity.getSimpleName()
+                ));
+            }
+        }
+    }
+
+    /**
+     * reads the current row of the result set. attributes without a column
+     * stay null, columns that cannot be read are UNREADABLE.
+     *
+     * @param result
+     * @return the values in the order of the entity attributes
+     */
+    Object[] map(ResultSet result) {
+
+        Object[] row = new Object[this.attributeCount];
+
+        for (int i = 0; i < this.columns.length; i++) {
+
+            DomainModelAttribute attribute = this.columns[i];
+            if (attribute != null) {
+
+                row[attribute.position] = this.getTransformedValue(attribute, result, i + 1);
+            }
+        }
+
+        return row;
+    }
+
+    /**
+     * get the value of the column by the type of the attribute
+     *
+     * @param attribute
+     * @param result
+     * @param column
+     * @return the value or UNREADABLE
+     */
+    private Object getTransformedValue(DomainModelAttribute attribute, ResultSet result, int column) {
+
+        try {
+
+            // compressed values are read as bytes
+            if (attribute.compressed) {
+
+                byte[] value = result.getBytes(column);
+                if (value == null) {
+
+                    return null;
+                }
+
+                value = ColumnCompression.decompress(value);
+                return attribute.type == ColumnType.Object ? value : new String(value, StandardCharsets.UTF_8);
+            }
+
+            switch (attribute.type) {
+
+                case BigDecimal:
+                    return result.getBigDecimal(column);
+                case Double:
+                    return result.getDouble(column);
+                case Float:
+                    return result.getFloat(column);
+                case Integer:
+                    return result.getInt(column);
+                case Long:
+                    return result.getLong(column);
+                case Date:
+                    return result.getDate(column);
+                case Boolean:
+                    return result.getBoolean(column);
+                case Object:
+                    return result.getObject(column);
+                default:
+                case Text:
+                case String:
+                    return result.getString(column);
+            }
+
+        } catch (SQLException | IOException ex) {
+
+            Main.log.warning(String.format(
+                    "Cannot read the column %s, the entity will not be stored!",
+                    attribute.columnName
+            ));
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            return RowMapper.UNREADABLE;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * a least recently used cache of prepared statements for one physical
+ * connection. the statements are keyed by their sql string.
+ *
+ * @author Wrath
+ */
+class StatementCache {
+
+    // the connection that owns the statements
+    private final Connection connection;
+
+    // the maximum amount of cached statements
+    private final int maxSize;
+
+    // the cached statements in access order
+    private final Map<String, PreparedStatement> statements;
+
+    StatementCache(Connection connection, int maxSize) {
+
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+
+                // close the least recently used statement
+                if (this.size() > StatementCache.this.maxSize) {
+
+                    StatementCache.closeQuietly(eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * get a statement for the given sql. closing the returned statement will
+     * put it back into the cache.
+     *
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+
+        // a statement can only be used once at a time, so take it out of the
+        // cache until it will be closed
+        PreparedStatement statement;
+        synchronized (this.statements) {
+
+            statement = this.statements.remove(sql);
+        }
+
+        if (statement == null) {
+
+            statement = this.connection.prepareStatement(sql);
+        }
+
+        return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new Handle(sql, statement)
+        );
+    }
+
+    /**
+     * closes all cached statements
+     */
+    void close() {
+
+        synchronized (this.statements) {
+
+            this.statements.values().forEach(StatementCache::closeQuietly);
+            this.statements.clear();
+        }
+    }
+
+    /**
+     * puts a statement back into the cache
+     *
+     * @param sql
+     * @param statement
+     */
+    private void release(String sql, PreparedStatement statement) {
+
+        try {
+
+            // forget everything from the last execution
+            statement.clearParameters();
+            statement.clearBatch();
+        } catch (SQLException ex) {
+
+            StatementCache.closeQuietly(statement);
+            return;
+        }
+
+        synchronized (this.statements) {
+
+            // there is allready a statement for that sql
+            if (this.maxSize <= 0 || this.statements.containsKey(sql)) {
+
+                StatementCache.closeQuietly(statement);
+                return;
+            }
+
+            this.statements.put(sql, statement);
+        }
+    }
+
+    /**
+     * closes a statement and ignores errors
+     *
+     * @param statement
+     */
+    private static void closeQuietly(PreparedStatement statement) {
+
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+
+            // the statement is gone anyway
+        }
+    }
+
+    /**
+     * the handle that will be given to the executor. closing it returns the
+     * statement to the cache.
+     */
+    private class Handle implements InvocationHandler {
+
+        private final String sql;
+        private final PreparedStatement statement;
+        private boolean closed = false;
+
+        Handle(String sql, PreparedStatement statement) {
+
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            switch (method.getName()) {
+
+                case "close":
+                    if (!this.closed) {
+
+                        this.closed = true;
+                        StatementCache.this.release(this.sql, this.statement);
+                    }
+                    return null;
+                case "isClosed":
+                    return this.closed || this.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            // the handle must not be used after close
+            if (this.closed) {
+
+                throw new SQLException("The statement has allready been closed");
+            }
+
+            try {
+
+                return method.invoke(this.statement, args);
+            } catch (InvocationTargetException ex) {
+
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+/**
+ * the result of storing an entity
+ *
+ * @author Wrath
+ */
+public enum StoreResult {
+
+    // the entity has been written
+    STORED,
+    // the row has been changed since the entity has been loaded, nothing has
+    // been written
+    CONFLICT,
+    // the entity could not be written
+    FAILED;
+
+    /**
+     * get the result of a store that cannot conflict
+     *
+     * @param stored
+     * @return
+     */
+    public static StoreResult of(boolean stored) {
+
+        return stored ? StoreResult.STORED : StoreResult.FAILED;
+    }
+
+    /**
+     * checks if the entity has been written
+     *
+     * @return
+     */
+    public boolean isStored() {
+
+        return this == StoreResult.STORED;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.database;
+
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.database.domainmodel.DecoratedDomainModel;
+import de.qhun.mc.playerdatasync.database.domainmodel.DomainModelAttribute;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * collects the stores of one entity class and writes them as batches, one
+ * batch per set of changed columns. stores with the same primary key are
+ * coalesced, the last one wins.
+ *
+ * @author Wrath
+ */
+class WriteBehindQueue {
+
+    // all queues that have been created
+    private static final List<WriteBehindQueue> queues = new CopyOnWriteArrayList<>();
+
+    // flushes the queues on a size or time trigger
+    private static ScheduledExecutorService flusher;
+
+    // the entity class of this queue
+    private final Class<?> entity;
+
+    // the attributes of the entity
+    private final List<DomainModelAttribute> attributes;
+
+    // the positions of the primary attributes in the order of their index
+    private final int[] primaryPositions;
+
+    // the executor that writes the batches
+    private final DatabaseExecutor databaseExecutor;
+
+    // the amount of pending stores that trigger a flush
+    private final int batchSize;
+
+    // pending stores by primary key
+    private final Map<List<Object>, PendingStore> pending = new ConcurrentHashMap<>();
+
+    // true if a size triggered flush has been scheduled
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    WriteBehindQueue(Class<?> entity, DatabaseExecutor databaseExecutor, int batchSize, long flushInterval) {
+
+        this.entity = entity;
+        this.attributes = DecoratedDomainModel.getAttributes(entity);
+        this.databaseExecutor = databaseExecutor;
+        this.batchSize = batchSize;
+
+        // the primary index of the decorator is the position in the key
+        List<DomainModelAttribute> primaryAttributes = DecoratedDomainModel.getPrimaryAttributes(entity);
+        this.primaryPositions = new int[primaryAttributes.size()];
+        primaryAttributes.forEach(attribute -> {
+
+            int index = primaryAttributes.size() == 1 ? 0 : attribute.primaryIndex;
+            this.primaryPositions[index] = attribute.position;
+        });
+
+        // the time trigger
+        WriteBehindQueue.getFlusher().scheduleWithFixedDelay(
+                this::flushSafely, flushInterval, flushInterval, TimeUnit.MILLISECONDS
+        );
+        WriteBehindQueue.queues.add(this);
+    }
+
+    /**
+     * queues the given values of an entity
+     *
+     * @param values the values of all attributes, they must not change until
+     * the flush
+     * @param columns the attributes to update if the entity is stored allready
+     * @param stored called by the flusher after the values have been written
+     */
+    void enqueue(Object[] values, List<DomainModelAttribute> columns, Runnable stored) {
+
+        this.pending.put(this.getKey(values), new PendingStore(values, columns, stored));
+
+        // the size trigger
+        if (this.pending.size() >= this.batchSize && this.flushScheduled.compareAndSet(false, true)) {
+
+            WriteBehindQueue.getFlusher().execute(() -> {
+
+                this.flushScheduled.set(false);
+                this.flushSafely();
+            });
+        }
+    }
+
+    /**
+     * drops a pending store of the given entity
+     *
+     * @param entity
+     */
+    void discard(Object entity) {
+
+        Object[] values = new Object[this.attributes.size()];
+        for (int position : this.primaryPositions) {
+
+            values[position] = this.attributes.get(position).getFieldValue(entity);
+        }
+
+        this.pending.remove(this.getKey(values));
+    }
+
+    /**
+     * checks if there is a pending store for the given primary key. a list
+     * primary is ordered by the primary index of the decorator.
+     *
+     * @param primary
+     * @return
+     */
+    boolean isPending(Object primary) {
+
+        if (this.pending.isEmpty()) {
+            return false;
+        }
+
+        if (primary instanceof List) {
+
+            return this.pending.containsKey(new ArrayList<>((List<?>) primary));
+        }
+
+        return this.pending.containsKey(Collections.singletonList(primary));
+    }
+
+    /**
+     * checks if there is any pending store
+     *
+     * @return
+     */
+    boolean hasPending() {
+
+        return !this.pending.isEmpty();
+    }
+
+    /**
+     * writes all pending stores as one batch
+     *
+     * @return
+     */
+    synchronized boolean flush() {
+
+        if (this.pending.isEmpty()) {
+            return true;
+        }
+
+        // take every pending store that is present right now, grouped by
+        // the changed columns
+        Map<List<DomainModelAttribute>, Map<List<Object>, PendingStore>> taken = new HashMap<>();
+        Iterator<Map.Entry<List<Object>, PendingStore>> iterator = this.pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+
+            Map.Entry<List<Object>, PendingStore> entry = iterator.next();
+            if (this.pending.remove(entry.getKey(), entry.getValue())) {
+
+                taken.computeIfAbsent(entry.getValue().columns, columns -> new HashMap<>())
+                        .put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        boolean success = true;
+        for (Map.Entry<List<DomainModelAttribute>, Map<List<Object>, PendingStore>> group : taken.entrySet()) {
+
+            List<Object[]> rows = new ArrayList<>();
+            group.getValue().values().forEach(store -> rows.add(store.values));
+
+            if (this.databaseExecutor.storeBatch(this.entity, rows, group.getKey())) {
+
+                group.getValue().values().forEach(store -> store.stored.run());
+            } else {
+
+                // put them back, a newer store wins
+                group.getValue().forEach(this.pending::putIfAbsent);
+                success = false;
+            }
+        }
+
+        return success;
+    }
+
+    /**
+     * flushes and logs every error because the flusher must not die
+     */
+    private void flushSafely() {
+
+        try {
+
+            if (!this.flush()) {
+
+                Main.log.warning(String.format(
+                        "Could not write %d pending %s entities. Retrying on the next flush.",
+                        this.pending.size(), this.entity.getSimpleName()
+                ));
+            }
+        } catch (Exception ex) {
+
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * builds the primary key of the given values
+     *
+     * @param values
+     * @return
+     */
+    private List<Object> getKey(Object[] values) {
+
+        Object[] key = new Object[this.primaryPositions.length];
+        for (int i = 0; i < key.length; i++) {
+
+            key[i] = values[this.primaryPositions[i]];
+        }
+
+        return Arrays.asList(key);
+    }
+
+    /**
+     * writes every pending store of all queues. returns false if any store
+     * could not be written.
+     *
+     * @return
+     */
+    static boolean flushAll() {
+
+        boolean success = true;
+        for (WriteBehindQueue queue : WriteBehindQueue.queues) {
+
+            success &= queue.flush();
+        }
+
+        return success;
+    }
+
+    /**
+     * writes every pending store and stops the flusher
+     */
+    static synchronized void shutdown() {
+
+        if (WriteBehindQueue.flusher != null) {
+
+            WriteBehindQueue.flusher.shutdownNow();
+            WriteBehindQueue.flusher = null;
+        }
+
+        if (!WriteBehindQueue.flushAll()) {
+
+            Main.log.severe("Some pending stores could not be written to the database!");
+        }
+
+        WriteBehindQueue.queues.clear();
+    }
+
+    /**
+     * get or start the flusher thread
+     *
+     * @return
+     */
+    private static synchronized ScheduledExecutorService getFlusher() {
+
+        if (WriteBehindQueue.flusher == null) {
+
+            WriteBehindQueue.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+                Thread thread = new Thread(runnable, "QhunPlayerDataSync-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return WriteBehindQueue.flusher;
+    }
+
+    /**
+     * one store that waits for the flush
+     */
+    private static class PendingStore {
+
+        // the values of all attributes
+        private final Object[] values;
+
+        // the attributes to update
+        private final List<DomainModelAttribute> columns;
+
+        // called after the values have been written
+        private final Runnable stored;
+
+        PendingStore(Object[] values, List<DomainModelAttribute> columns, Runnable stored) {
+
+            this.values = values;
+            this.columns = columns;
+            this.stored = stored;
+        }
+    }
+}
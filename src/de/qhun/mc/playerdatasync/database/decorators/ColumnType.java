@@ -25,6 +25,7 @@ public enum ColumnType {
 
     String,
     Integer,
+    Long,
     Double,
     Float,
     BigDecimal,
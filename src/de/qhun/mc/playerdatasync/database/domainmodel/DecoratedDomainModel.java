@@ -16,36 +16,39 @@
  */
 package de.qhun.mc.playerdatasync.database.domainmodel;
 
-import de.qhun.mc.playerdatasync.Main;
 import de.qhun.mc.playerdatasync.database.decorators.Column;
-import de.qhun.mc.playerdatasync.database.decorators.ColumnType;
 import de.qhun.mc.playerdatasync.database.decorators.DecoratorAccessor;
 import de.qhun.mc.playerdatasync.database.decorators.DecoratorGetter;
-import de.qhun.mc.playerdatasync.database.decorators.NotNull;
-import de.qhun.mc.playerdatasync.database.decorators.Primary;
 import de.qhun.mc.playerdatasync.database.decorators.Table;
 import de.qhun.mc.playerdatasync.util.DependencyInjection;
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * a class that chaches decorator data from an entity by checking its decorator
  * data and provides functionslity like quick accessing table name and column
- * data type
+ * data type. all caches are safe to be used by multiple threads.
  *
  * @author Wrath
  */
 public class DecoratedDomainModel {
 
     // the table name cache
-    private static final Map<Class<?>, String> tableNameCache = new HashMap<>();
+    private static final Map<Class<?>, String> tableNameCache = new ConcurrentHashMap<>();
 
     // the attribute cache
-    private static final Map<Class<?>, List<DomainModelAttribute>> attributeMetadataCache = new HashMap<>();
+    private static final Map<Class<?>, List<DomainModelAttribute>> attributeMetadataCache = new ConcurrentHashMap<>();
+
+    // the primary attribute cache
+    private static final Map<Class<?>, List<DomainModelAttribute>> primaryAttributeCache = new ConcurrentHashMap<>();
+
+    // the version attribute cache
+    private static final Map<Class<?>, Optional<DomainModelAttribute>> versionAttributeCache = new ConcurrentHashMap<>();
 
     /**
      * get the table name for an entity
@@ -56,99 +59,124 @@ public class DecoratedDomainModel {
      */
     public static <Entity extends Object> String getTableName(Class<Entity> entity) {
 
-        // available in the cache?
-        if (DecoratedDomainModel.tableNameCache.containsKey(entity)) {
+        return DecoratedDomainModel.tableNameCache.computeIfAbsent(entity, entityClass -> {
 
-            // yes available!
-            return DecoratedDomainModel.tableNameCache.get(entity);
-        }
+            // not available, find by decorator!
+            Table tableDecorator = DecoratorGetter.getClassDecoratorOrNull(Table.class, entityClass);
+
+            // check if there is a name available
+            return !"".equals(tableDecorator.name()) ? tableDecorator.name() : entityClass.getSimpleName().toLowerCase();
+        });
+    }
+
+    /**
+     * get metadata for all attributes of the given entity. the list can not
+     * be modified.
+     *
+     * @param <Entity>
+     * @param entity
+     * @return
+     */
+    public static <Entity extends Object> List<DomainModelAttribute> getAttributes(Class<Entity> entity) {
+
+        return DecoratedDomainModel.attributeMetadataCache.computeIfAbsent(entity, entityClass -> {
 
-        // not available, find by decorator!
-        Table tableDecorator = DecoratorGetter.getClassDecoratorOrNull(Table.class, entity);
+            // not in cache, get from the model itself
+            List<DecoratorAccessor<Column>> fields = DecoratorGetter.getFieldsWithDecorator(Column.class, entityClass);
+            List<DomainModelAttribute> attributes = new ArrayList<>();
 
-        // check if there is a name available
-        String tableName = !"".equals(tableDecorator.name()) ? tableDecorator.name() : entity.getSimpleName().toLowerCase();
+            // construct a DomainModelAttribute for every field
+            fields.forEach(accessor -> {
 
-        // cache the value
-        DecoratedDomainModel.tableNameCache.put(entity, tableName);
+                attributes.add(new DomainModelAttribute(entityClass, accessor, attributes.size()));
+            });
 
-        return tableName;
+            return Collections.unmodifiableList(attributes);
+        });
     }
 
     /**
-     * get metadata for all attributes of the given entity
+     * get metadata for the primary attributes of the given entity in the order
+     * of all attributes. the list can not be modified.
      *
      * @param <Entity>
      * @param entity
      * @return
      */
-    public static <Entity extends Object> List<DomainModelAttribute> getAttributes(Class<Entity> entity) {
+    public static <Entity extends Object> List<DomainModelAttribute> getPrimaryAttributes(Class<Entity> entity) {
 
-        // allready in cache?
-        if (DecoratedDomainModel.attributeMetadataCache.containsKey(entity)) {
+        return DecoratedDomainModel.primaryAttributeCache.computeIfAbsent(entity, entityClass -> {
 
-            // yes available!
-            return DecoratedDomainModel.attributeMetadataCache.get(entity);
-        }
+            return Collections.unmodifiableList(DecoratedDomainModel.getAttributes(entityClass)
+                    .stream().filter(attribute -> attribute.isPrimary)
+                    .collect(Collectors.toList())
+            );
+        });
+    }
 
-        // not in cache, get from the model itself
-        List<DecoratorAccessor<Column>> fields = DecoratorGetter.getFieldsWithDecorator(Column.class, entity);
-        List<DomainModelAttribute> attributes = new ArrayList<>();
+    /**
+     * get metadata for the version attribute of the given entity
+     *
+     * @param <Entity>
+     * @param entity
+     * @return null if the entity has no version
+     */
+    public static <Entity extends Object> DomainModelAttribute getVersionAttribute(Class<Entity> entity) {
 
-        // iterate over the Fields
-        fields.forEach(accessor -> {
+        return DecoratedDomainModel.versionAttributeCache.computeIfAbsent(entity, entityClass -> {
 
-            // get the real attribute name
-            String realName = accessor.field.getName();
+            List<DomainModelAttribute> versions = DecoratedDomainModel.getAttributes(entityClass)
+                    .stream().filter(attribute -> attribute.isVersion)
+                    .collect(Collectors.toList());
 
-            // get the column name in the database
-            String columnName = !"".equals(accessor.decorator.name()) ? accessor.decorator.name() : realName;
+            // only one version can be compared
+            if (versions.size() > 1) {
 
-            // now the column type
-            ColumnType columnType = accessor.decorator.type();
+                throw new Error("The entity " + entityClass.getSimpleName() + " can only have one version!");
+            }
 
-            // construct a DomainModelAttribute
-            DomainModelAttribute attribute = new DomainModelAttribute();
-            attribute.attributeName = realName;
-            attribute.columnName = columnName;
-            attribute.type = columnType;
-            attribute.field = accessor.field;
-            attribute.isPrimary = accessor.field.isAnnotationPresent(Primary.class);
-            attribute.size = accessor.decorator.size();
-            attribute.precision = accessor.decorator.precision();
-            attribute.notNull = accessor.field.isAnnotationPresent(NotNull.class);
-            attribute.modelClass = entity;
+            return versions.stream().findFirst();
+        }).orElse(null);
+    }
 
-            // add it to the list
-            attributes.add(attribute);
-        });
+    /**
+     * get the values of all attributes in the order of the attributes
+     *
+     * @param <Entity>
+     * @param entity
+     * @return
+     */
+    public static <Entity extends Object> Object[] getValues(Entity entity) {
+
+        List<DomainModelAttribute> attributes = DecoratedDomainModel.getAttributes(entity.getClass());
+        Object[] values = new Object[attributes.size()];
 
-        // cache all attributes
-        DecoratedDomainModel.attributeMetadataCache.put(entity, attributes);
+        for (int i = 0; i < values.length; i++) {
 
-        return attributes;
+            values[i] = attributes.get(i).getFieldValue(entity);
+        }
+
+        return values;
     }
 
     /**
-     * get all attributes including its value
+     * get the values of the primary attributes in the order of the attributes
      *
      * @param <Entity>
      * @param entity
      * @return
      */
-    public static <Entity extends Object> List<DomainModelAttribute> getAttributesWithValues(Entity entity) {
+    public static <Entity extends Object> Object[] getPrimaryValues(Entity entity) {
 
-        // first get all attributes
-        List<DomainModelAttribute> attributes = DecoratedDomainModel.getAttributes(entity.getClass());
+        List<DomainModelAttribute> primaryAttributes = DecoratedDomainModel.getPrimaryAttributes(entity.getClass());
+        Object[] values = new Object[primaryAttributes.size()];
 
-        // iterate over all attributes and get its value
-        attributes.forEach(attribute -> {
+        for (int i = 0; i < values.length; i++) {
 
-            attribute.value = attribute.getFieldValue(entity);
-        });
+            values[i] = primaryAttributes.get(i).getFieldValue(entity);
+        }
 
-        // dont cache, just return!
-        return attributes;
+        return values;
     }
 
     /**
@@ -16,46 +16,125 @@
  */
 package de.qhun.mc.playerdatasync.database.domainmodel;
 
+import de.qhun.mc.playerdatasync.database.decorators.Column;
+import de.qhun.mc.playerdatasync.database.decorators.Compressed;
 import de.qhun.mc.playerdatasync.database.decorators.ColumnType;
+import de.qhun.mc.playerdatasync.database.decorators.DecoratorAccessor;
+import de.qhun.mc.playerdatasync.database.decorators.Indexed;
+import de.qhun.mc.playerdatasync.database.decorators.NotNull;
+import de.qhun.mc.playerdatasync.database.decorators.Primary;
+import de.qhun.mc.playerdatasync.database.decorators.Timestamp;
+import de.qhun.mc.playerdatasync.database.decorators.Version;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import sun.misc.Unsafe;
 
 /**
- * a simple class containung instances of column type and value pairs
+ * the immutable metadata of one entity attribute. values are never stored
+ * here, they are carried in arrays in the order of the entity attributes.
  *
  * @author Wrath
  * @param <Value>
  */
 public class DomainModelAttribute<Value extends Object> {
 
+    // the field access of the jvm. it is a constant, so the jit compiles
+    // every access into a plain load or store of the field
+    private static final Unsafe UNSAFE = DomainModelAttribute.loadUnsafe();
+
     // the class that this attribute belongs to
-    public Class<? extends Object> modelClass;
-    
-    // the supported column datatype
-    public ColumnType type = ColumnType.Object;
+    public final Class<? extends Object> modelClass;
 
-    // the effective value if the attribute
-    public Value value;
+    // the supported column datatype
+    public final ColumnType type;
 
     // the column name of the attribute
-    public String columnName;
+    public final String columnName;
 
     // the name of the attribute on the domain model
-    public String attributeName;
+    public final String attributeName;
 
     // the field of the model to get access to its value later
-    public Field field;
-    
+    public final Field field;
+
+    // the position of the attribute in the attribute list of the entity
+    public final int position;
+
     // primary attribute?
-    public boolean isPrimary = false;
-    
+    public final boolean isPrimary;
+
+    // the index of the primary decorator
+    public final int primaryIndex;
+
     // not null constraint?
-    public boolean notNull = false;
-    
+    public final boolean notNull;
+
     // the size of the field. eg varchar(20) or int(6)
-    public int size;
-    
+    public final int size;
+
     // the numeric precision if available
-    public int precision;
+    public final int precision;
+
+    // is the value compressed in the database?
+    public final boolean compressed;
+
+    // has the column an index?
+    public final boolean indexed;
+
+    // is this the version of the row?
+    public final boolean isVersion;
+
+    // is the column set to the time of the database?
+    public final boolean isTimestamp;
+
+    // the location of the field in every entity instance
+    private final long fieldOffset;
+
+    // the type of the field and its access semantics
+    private final Class<?> fieldType;
+    private final boolean isVolatile;
+
+    public DomainModelAttribute(Class<? extends Object> modelClass, DecoratorAccessor<Column> accessor, int position) {
+
+        Primary primary = accessor.field.getAnnotation(Primary.class);
+
+        this.modelClass = modelClass;
+        this.field = accessor.field;
+        this.attributeName = accessor.field.getName();
+        this.columnName = !"".equals(accessor.decorator.name()) ? accessor.decorator.name() : this.attributeName;
+        this.type = accessor.decorator.type();
+        this.position = position;
+        this.isPrimary = primary != null;
+        this.primaryIndex = primary != null ? primary.index() : -1;
+        this.notNull = accessor.field.isAnnotationPresent(NotNull.class);
+        this.size = accessor.decorator.size();
+        this.precision = accessor.decorator.precision();
+        this.compressed = accessor.field.isAnnotationPresent(Compressed.class);
+        this.indexed = accessor.field.isAnnotationPresent(Indexed.class);
+        this.isVersion = accessor.field.isAnnotationPresent(Version.class);
+
+        // the database increases the version
+        if (this.isVersion && (this.type != ColumnType.Long || this.isPrimary)) {
+
+            throw new Error("The version " + this.attributeName + " must be a non primary long column!");
+        }
+
+        // the database sets the time
+        this.isTimestamp = accessor.field.isAnnotationPresent(Timestamp.class);
+        if (this.isTimestamp && (this.type != ColumnType.Long || this.isPrimary || this.isVersion)) {
+
+            throw new Error("The timestamp " + this.attributeName + " must be a non primary long column!");
+        }
+
+        // the field will be accessed for every load and save
+        if (Modifier.isStatic(this.field.getModifiers())) {
+
+            throw new Error("The domain model field " + this.attributeName + " must not be static!");
+        }
+        this.fieldOffset = UNSAFE.objectFieldOffset(this.field);
+        this.fieldType = this.field.getType();
+        this.isVolatile = Modifier.isVolatile(this.field.getModifiers());
+    }
 
     /**
      * get the current value stored in the field of the entity
@@ -63,20 +142,256 @@ public class DomainModelAttribute<Value extends Object> {
      * @param <Entity>
      * @param object
      * @return
+     * @throws IllegalArgumentException if the object is no entity of this
+     * attribute
      */
     public <Entity extends Object> Value getFieldValue(Entity object) {
 
-        Value fieldValue;
+        this.checkEntity(object);
 
-        // try getting its value
-        try {
-            this.field.setAccessible(true);
-            fieldValue = (Value) this.field.get(object);
-        } catch (IllegalAccessException | IllegalArgumentException ex) {
+        Object fieldValue;
+        if (!this.fieldType.isPrimitive()) {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getObjectVolatile(object, this.fieldOffset)
+                    : UNSAFE.getObject(object, this.fieldOffset);
+        } else if (this.fieldType == int.class) {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getIntVolatile(object, this.fieldOffset)
+                    : UNSAFE.getInt(object, this.fieldOffset);
+        } else if (this.fieldType == long.class) {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getLongVolatile(object, this.fieldOffset)
+                    : UNSAFE.getLong(object, this.fieldOffset);
+        } else if (this.fieldType == double.class) {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getDoubleVolatile(object, this.fieldOffset)
+                    : UNSAFE.getDouble(object, this.fieldOffset);
+        } else if (this.fieldType == float.class) {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getFloatVolatile(object, this.fieldOffset)
+                    : UNSAFE.getFloat(object, this.fieldOffset);
+        } else if (this.fieldType == boolean.class) {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getBooleanVolatile(object, this.fieldOffset)
+                    : UNSAFE.getBoolean(object, this.fieldOffset);
+        } else if (this.fieldType == short.class) {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getShortVolatile(object, this.fieldOffset)
+                    : UNSAFE.getShort(object, this.fieldOffset);
+        } else if (this.fieldType == byte.class) {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getByteVolatile(object, this.fieldOffset)
+                    : UNSAFE.getByte(object, this.fieldOffset);
+        } else {
+
+            fieldValue = this.isVolatile
+                    ? UNSAFE.getCharVolatile(object, this.fieldOffset)
+                    : UNSAFE.getChar(object, this.fieldOffset);
+        }
+
+        return (Value) fieldValue;
+    }
+
+    /**
+     * set the value of the field of the entity. primitive fields accept their
+     * wrapper and the wrappers of narrower types, like reflection does.
+     *
+     * @param <Entity>
+     * @param object
+     * @param value
+     * @throws IllegalArgumentException if the value does not fit the field
+     */
+    public <Entity extends Object> void setFieldValue(Entity object, Object value) {
+
+        this.checkEntity(object);
+
+        if (!this.fieldType.isPrimitive()) {
+
+            if (value != null && !this.fieldType.isInstance(value)) {
+
+                throw this.createMismatch(value);
+            }
+
+            if (this.isVolatile) {
+                UNSAFE.putObjectVolatile(object, this.fieldOffset, value);
+            } else {
+                UNSAFE.putObject(object, this.fieldOffset, value);
+            }
+        } else if (this.fieldType == boolean.class) {
+
+            if (!(value instanceof Boolean)) {
+
+                throw this.createMismatch(value);
+            }
+
+            if (this.isVolatile) {
+                UNSAFE.putBooleanVolatile(object, this.fieldOffset, (Boolean) value);
+            } else {
+                UNSAFE.putBoolean(object, this.fieldOffset, (Boolean) value);
+            }
+        } else if (this.fieldType == char.class) {
 
-            fieldValue = null;
+            if (!(value instanceof Character)) {
+
+                throw this.createMismatch(value);
+            }
+
+            if (this.isVolatile) {
+                UNSAFE.putCharVolatile(object, this.fieldOffset, (Character) value);
+            } else {
+                UNSAFE.putChar(object, this.fieldOffset, (Character) value);
+            }
+        } else {
+
+            this.setNumber(object, value);
+        }
+    }
+
+    /**
+     * sets a numeric primitive field. only widening conversions are allowed.
+     *
+     * @param object
+     * @param value
+     */
+    private void setNumber(Object object, Object value) {
+
+        // the rank of the value and the field type, a value can be stored
+        // in fields of the same or a higher rank
+        int valueRank = DomainModelAttribute.getWideningRank(value);
+        int fieldRank = DomainModelAttribute.getWideningRank(this.fieldType);
+        if (valueRank < 0 || valueRank > fieldRank || (this.fieldType == short.class && value instanceof Character)) {
+
+            throw this.createMismatch(value);
+        }
+
+        // a char is widened by its code
+        Number number = value instanceof Character ? (int) (Character) value : (Number) value;
+
+        if (this.fieldType == int.class) {
+
+            if (this.isVolatile) {
+                UNSAFE.putIntVolatile(object, this.fieldOffset, number.intValue());
+            } else {
+                UNSAFE.putInt(object, this.fieldOffset, number.intValue());
+            }
+        } else if (this.fieldType == long.class) {
+
+            if (this.isVolatile) {
+                UNSAFE.putLongVolatile(object, this.fieldOffset, number.longValue());
+            } else {
+                UNSAFE.putLong(object, this.fieldOffset, number.longValue());
+            }
+        } else if (this.fieldType == double.class) {
+
+            if (this.isVolatile) {
+                UNSAFE.putDoubleVolatile(object, this.fieldOffset, number.doubleValue());
+            } else {
+                UNSAFE.putDouble(object, this.fieldOffset, number.doubleValue());
+            }
+        } else if (this.fieldType == float.class) {
+
+            if (this.isVolatile) {
+                UNSAFE.putFloatVolatile(object, this.fieldOffset, number.floatValue());
+            } else {
+                UNSAFE.putFloat(object, this.fieldOffset, number.floatValue());
+            }
+        } else if (this.fieldType == short.class) {
+
+            if (this.isVolatile) {
+                UNSAFE.putShortVolatile(object, this.fieldOffset, number.shortValue());
+            } else {
+                UNSAFE.putShort(object, this.fieldOffset, number.shortValue());
+            }
+        } else {
+
+            if (this.isVolatile) {
+                UNSAFE.putByteVolatile(object, this.fieldOffset, number.byteValue());
+            } else {
+                UNSAFE.putByte(object, this.fieldOffset, number.byteValue());
+            }
         }
+    }
+
+    /**
+     * the field is accessed by its offset, so the object must be checked
+     *
+     * @param object
+     * @throws IllegalArgumentException if the object is no entity of this
+     * attribute
+     */
+    private void checkEntity(Object object) {
+
+        if (!this.field.getDeclaringClass().isInstance(object)) {
 
-        return fieldValue;
+            throw new IllegalArgumentException(String.format(
+                    "%s is no %s", object, this.field.getDeclaringClass().getSimpleName()
+            ));
+        }
+    }
+
+    /**
+     * creates the exception of a value that does not fit the field
+     *
+     * @param value
+     * @return
+     */
+    private IllegalArgumentException createMismatch(Object value) {
+
+        return new IllegalArgumentException(String.format(
+                "Cannot set %s of %s to %s", this.attributeName, this.modelClass.getSimpleName(), value
+        ));
+    }
+
+    /**
+     * get the rank of a numeric value or type in the order of the widening
+     * conversions
+     *
+     * @param value a boxed value or a primitive type
+     * @return -1 if the value is not numeric
+     */
+    private static int getWideningRank(Object value) {
+
+        if (value instanceof Byte || value == byte.class) {
+            return 0;
+        } else if (value instanceof Short || value == short.class
+                || value instanceof Character || value == char.class) {
+            return 1;
+        } else if (value instanceof Integer || value == int.class) {
+            return 2;
+        } else if (value instanceof Long || value == long.class) {
+            return 3;
+        } else if (value instanceof Float || value == float.class) {
+            return 4;
+        } else if (value instanceof Double || value == double.class) {
+            return 5;
+        }
+
+        return -1;
+    }
+
+    /**
+     * get the field access of the jvm
+     *
+     * @return
+     */
+    private static Unsafe loadUnsafe() {
+
+        try {
+
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (NoSuchFieldException | IllegalAccessException ex) {
+
+            throw new Error("Cannot access the domain model fields", ex);
+        }
     }
 }
@@ -56,8 +56,18 @@ public class DomainModelSetup {
                     DecoratedDomainModel.getAttributes(entity)
             );
 
+            // tables of older versions might miss columns or store binary
+            // values as text
+            this.databaseAdapter.query().upgradeColumns(
+                    DecoratedDomainModel.getTableName(entity),
+                    DecoratedDomainModel.getAttributes(entity)
+            );
+
             // log creation statement
             Main.log.info("Successfully created table for DomainModel: " + entity.getSimpleName());
+
+            // compile all statements of this entity once
+            this.databaseAdapter.query().compileTemplates(entity);
             
         } catch (Exception ex) {
             
@@ -65,4 +65,16 @@ public class MysqlAdapter extends DatabaseAdapter {
 
         return new MysqlDialect();
     }
+
+    /**
+     * use server side prepared statements. the statements are kept open by the
+     * statement cache so every query will be parsed only once per connection.
+     *
+     * @return
+     */
+    @Override
+    protected String getConnectionParameters() {
+
+        return "&useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true";
+    }
 }
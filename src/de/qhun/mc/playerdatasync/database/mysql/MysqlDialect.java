@@ -20,7 +20,6 @@ import de.qhun.mc.playerdatasync.database.DatabaseDialect;
 import de.qhun.mc.playerdatasync.database.DialectFields;
 import de.qhun.mc.playerdatasync.database.domainmodel.DomainModelAttribute;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -32,6 +31,21 @@ public class MysqlDialect implements DatabaseDialect {
 
     private static final DialectFields fieldConverter = new MysqlFields();
 
+    // the current time of the database in milliseconds
+    private static final String CURRENT_TIME_MILLIS = "ROUND(UNIX_TIMESTAMP(CURRENT_TIMESTAMP(3)) * 1000)";
+
+    /**
+     * get the value of a written column. timestamps are set by the database,
+     * all other columns are parameters.
+     *
+     * @param column
+     * @return
+     */
+    private static String placeholder(DomainModelAttribute column) {
+
+        return column.isTimestamp ? CURRENT_TIME_MILLIS : "?";
+    }
+
     @Override
     public String createTable(String tableName, List<DomainModelAttribute> columns) {
 
@@ -65,7 +79,7 @@ public class MysqlDialect implements DatabaseDialect {
         // all together
         return String.format(
                 baseFormat, tableName, String.join(",", columnList),
-                !"".equals(primaryKey) ? ", PRIMARY KEY (" + primaryKey + ")" : ""
+                (!"".equals(primaryKey) ? ", PRIMARY KEY (" + primaryKey + ")" : "") + this.getIndexes(columns)
         );
     }
 
@@ -102,7 +116,72 @@ public class MysqlDialect implements DatabaseDialect {
         // all together
         return String.format(
                 baseFormat, tableName, String.join(",", columnList),
-                !"".equals(primaryKey) ? ", PRIMARY KEY (" + primaryKey + ")" : ""
+                (!"".equals(primaryKey) ? ", PRIMARY KEY (" + primaryKey + ")" : "") + this.getIndexes(columns)
+        );
+    }
+
+    @Override
+    public String addIndex(String tableName, DomainModelAttribute column) {
+
+        return String.format("ALTER TABLE `%s` ADD INDEX `%s` (`%s`)", tableName, column.columnName, column.columnName);
+    }
+
+    @Override
+    public String getPage(String tableName, List<DomainModelAttribute> orderColumns, int boundColumns, int limit) {
+
+        // rows after the bound in the order of the columns:
+        // (a > ?) OR (a = ? AND b > ?) OR ...
+        List<String> conditions = new ArrayList<>();
+        for (int i = 0; i < boundColumns; i++) {
+
+            List<String> condition = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+
+                condition.add("`" + orderColumns.get(j).columnName + "`=?");
+            }
+            condition.add("`" + orderColumns.get(i).columnName + "`>?");
+
+            conditions.add("(" + String.join(" AND ", condition) + ")");
+        }
+
+        return String.format(
+                "SELECT * from `%s`%s ORDER BY `%s` LIMIT %d",
+                tableName,
+                conditions.isEmpty() ? "" : " WHERE " + String.join(" OR ", conditions),
+                String.join("`,`", orderColumns.stream().map(column -> column.columnName).collect(Collectors.toList())),
+                limit
+        );
+    }
+
+    /**
+     * get the index definitions of a create table statement
+     *
+     * @param columns
+     * @return
+     */
+    private String getIndexes(List<DomainModelAttribute> columns) {
+
+        return columns.stream()
+                .filter(column -> column.indexed)
+                .map(column -> ", INDEX `" + column.columnName + "` (`" + column.columnName + "`)")
+                .collect(Collectors.joining());
+    }
+
+    @Override
+    public String addColumn(String tableName, DomainModelAttribute column) {
+
+        return String.format(
+                "ALTER TABLE `%s` ADD COLUMN `%s` %s",
+                tableName, column.columnName, fieldConverter.convertFromColumnType(column)
+        );
+    }
+
+    @Override
+    public String modifyColumn(String tableName, DomainModelAttribute column) {
+
+        return String.format(
+                "ALTER TABLE `%s` MODIFY COLUMN `%s` %s",
+                tableName, column.columnName, fieldConverter.convertFromColumnType(column)
         );
     }
 
@@ -118,23 +197,119 @@ public class MysqlDialect implements DatabaseDialect {
             columnList.add(value.columnName);
         });
 
-        // apply as many questionmarks as there are columns
-        String valueQuestionmarks = String.join("", Collections.nCopies(columnList.size(), "?,"));
-
-        // all together
+        // all together, one questionmark per column
         return String.format(
                 baseFormat,
                 tableName,
                 String.join(",", columnList),
-                // remove last char if available
-                valueQuestionmarks.replaceFirst(".$", "")
+                values.stream().map(MysqlDialect::placeholder).collect(Collectors.joining(","))
         );
     }
 
     @Override
     public String update(String tableName, List<DomainModelAttribute> values) {
 
-        return "";
+        String baseFormat = "UPDATE `%s` SET %s WHERE %s";
+        List<String> columnList = new ArrayList<>();
+        List<String> primaryList = new ArrayList<>();
+
+        // the primary columns select the row, all others will be set
+        values.forEach(value -> {
+
+            if (value.isPrimary) {
+
+                primaryList.add("`" + value.columnName + "`=?");
+            } else {
+
+                columnList.add("`" + value.columnName + "`=" + MysqlDialect.placeholder(value));
+            }
+        });
+
+        // there must be something to set and a row to select
+        if (columnList.isEmpty() || primaryList.isEmpty()) {
+
+            throw new Error("An update needs at least one primary and one non primary column!");
+        }
+
+        // all together, the set values first
+        return String.format(
+                baseFormat,
+                tableName,
+                String.join(",", columnList),
+                String.join(" AND ", primaryList)
+        );
+    }
+
+    @Override
+    public String increment(String tableName, DomainModelAttribute column, List<DomainModelAttribute> values) {
+
+        List<String> columnList = new ArrayList<>();
+        List<String> primaryList = new ArrayList<>();
+
+        // the column is changed by the database, not replaced
+        columnList.add("`" + column.columnName + "`=`" + column.columnName + "`+?");
+
+        // the primary columns select the row, all others will be set
+        values.forEach(value -> {
+
+            if (value.isPrimary) {
+
+                primaryList.add("`" + value.columnName + "`=?");
+            } else if (value != column) {
+
+                columnList.add("`" + value.columnName + "`=" + MysqlDialect.placeholder(value));
+            }
+        });
+
+        // there must be a row to select
+        if (primaryList.isEmpty()) {
+
+            throw new Error("An increment needs at least one primary column!");
+        }
+
+        // all together, the amount first, then the set values
+        return String.format(
+                "UPDATE `%s` SET %s WHERE %s",
+                tableName,
+                String.join(",", columnList),
+                String.join(" AND ", primaryList)
+        );
+    }
+
+    @Override
+    public String compareAndSwap(String tableName, DomainModelAttribute version, List<DomainModelAttribute> values) {
+
+        List<String> columnList = new ArrayList<>();
+        List<String> primaryList = new ArrayList<>();
+
+        // the primary columns select the row, all others will be set
+        values.forEach(value -> {
+
+            if (value.isPrimary) {
+
+                primaryList.add("`" + value.columnName + "`=?");
+            } else if (value != version) {
+
+                columnList.add("`" + value.columnName + "`=" + MysqlDialect.placeholder(value));
+            }
+        });
+
+        // there must be a row to select
+        if (primaryList.isEmpty()) {
+
+            throw new Error("A compare and swap needs at least one primary column!");
+        }
+
+        // the version is increased by the database and selects the row too
+        columnList.add("`" + version.columnName + "`=`" + version.columnName + "`+1");
+        primaryList.add("`" + version.columnName + "`=?");
+
+        return String.format(
+                "UPDATE `%s` SET %s WHERE %s",
+                tableName,
+                String.join(",", columnList),
+                String.join(" AND ", primaryList)
+        );
     }
 
     @Override
@@ -152,15 +327,15 @@ public class MysqlDialect implements DatabaseDialect {
         // iterate through all columns
         values.forEach(value -> {
 
-            columnList.add("`" + value.columnName + "`=? AND");
+            columnList.add("`" + value.columnName + "`=?");
         });
 
         // all together
         return String.format(
                 baseFormat,
                 tableName,
-                // join all where clauses and remove the last AND chars
-                String.join("", columnList).replaceFirst("....$", "")
+                // join all where clauses
+                String.join(" AND ", columnList)
         );
     }
 
@@ -176,16 +351,41 @@ public class MysqlDialect implements DatabaseDialect {
             columnList.add(value.columnName);
         });
 
-        // apply as many questionmarks as there are columns
-        String valueQuestionmarks = String.join("", Collections.nCopies(columnList.size(), "?,"));
-
-        // all together
+        // all together, one questionmark per column
         return String.format(
                 baseFormat,
                 tableName,
                 String.join(",", columnList),
-                // remove last char if available
-                valueQuestionmarks.replaceFirst(".$", "")
+                values.stream().map(MysqlDialect::placeholder).collect(Collectors.joining(","))
+        );
+    }
+
+    @Override
+    public String upsert(String tableName, List<DomainModelAttribute> values, List<DomainModelAttribute> updateColumns) {
+
+        List<String> updateList = new ArrayList<>();
+
+        // the existing row keeps every column that has not been given
+        updateColumns.forEach(column -> {
+
+            if (!column.isPrimary) {
+
+                updateList.add("`" + column.columnName + "`=VALUES(`" + column.columnName + "`)");
+            }
+        });
+
+        // nothing to update, keep the existing row as it is
+        if (updateList.isEmpty()) {
+
+            values.stream().filter(value -> value.isPrimary).findFirst().ifPresent(
+                    primary -> updateList.add("`" + primary.columnName + "`=`" + primary.columnName + "`")
+            );
+        }
+
+        return String.format(
+                "%s ON DUPLICATE KEY UPDATE %s",
+                this.insert(tableName, values),
+                String.join(",", updateList)
         );
     }
 
@@ -202,16 +402,68 @@ public class MysqlDialect implements DatabaseDialect {
         // iterate through all columns
         values.forEach(value -> {
 
-            columnList.add("`" + value.columnName + "`=? AND ");
+            columnList.add("`" + value.columnName + "`=?");
         });
 
         // all together
         return String.format(
                 baseFormat,
                 tableName,
-                // join all where clauses and remove the last AND chars
-                String.join("", columnList).replaceFirst(".....$", "")
+                // join all where clauses
+                String.join(" AND ", columnList)
+        );
+    }
+
+    @Override
+    public String exists(String tableName, List<DomainModelAttribute> values) {
+
+        // check if there are values
+        if (values.isEmpty()) {
+
+            throw new Error("There should be values to check the existence of a row!");
+        }
+
+        String baseFormat = "SELECT 1 from `%s` WHERE %s LIMIT 1";
+        List<String> columnList = new ArrayList<>();
+
+        // iterate through all columns
+        values.forEach(value -> {
+
+            columnList.add("`" + value.columnName + "`=?");
+        });
+
+        // all together, the primary index answers this without reading the row
+        return String.format(
+                baseFormat,
+                tableName,
+                String.join(" AND ", columnList)
         );
     }
 
+    @Override
+    public String getColumns(String tableName, List<DomainModelAttribute> columns) {
+
+        String baseFormat = "SELECT %s from `%s`";
+        List<String> columnList = new ArrayList<>();
+
+        // iterate through all columns
+        columns.forEach(column -> {
+
+            columnList.add("`" + column.columnName + "`");
+        });
+
+        // all together
+        return String.format(
+                baseFormat,
+                String.join(",", columnList),
+                tableName
+        );
+    }
+
+    @Override
+    public String currentTimeMillis() {
+
+        return "SELECT " + CURRENT_TIME_MILLIS;
+    }
+
 }
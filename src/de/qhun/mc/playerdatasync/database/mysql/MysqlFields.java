@@ -17,6 +17,7 @@
 package de.qhun.mc.playerdatasync.database.mysql;
 
 import de.qhun.mc.playerdatasync.database.DialectFields;
+import de.qhun.mc.playerdatasync.database.decorators.ColumnType;
 import de.qhun.mc.playerdatasync.database.domainmodel.DomainModelAttribute;
 import java.util.ArrayList;
 import java.util.List;
@@ -39,7 +40,8 @@ public class MysqlFields implements DialectFields {
 
         List<String> types = new ArrayList<>();
 
-        switch (attribute.type) {
+        // compressed values are always binary
+        switch (attribute.compressed ? ColumnType.Object : attribute.type) {
 
             case Double:
             case BigDecimal:
@@ -51,6 +53,9 @@ public class MysqlFields implements DialectFields {
             case Integer:
                 types.add("INT(" + attribute.size + ")");
                 break;
+            case Long:
+                types.add("BIGINT");
+                break;
             case Object:
                 types.add("BLOB");
                 break;
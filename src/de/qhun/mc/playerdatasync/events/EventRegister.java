@@ -19,9 +19,9 @@ package de.qhun.mc.playerdatasync.events;
 import de.qhun.mc.playerdatasync.Main;
 import org.bukkit.plugin.PluginManager;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import org.bukkit.event.Event;
@@ -29,7 +29,7 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 /**
  * a class that is capable of redirecting events to all modules that required an
- * ingame event
+ * ingame event. asynchronous events can be executed from any thread.
  *
  * @author Wrath
  */
@@ -46,7 +46,7 @@ public class EventRegister {
         this.plugin = plugin;
 
         // create empty stack
-        this.eventStack = new HashMap<>();
+        this.eventStack = new ConcurrentHashMap<>();
     }
 
     /**
@@ -76,7 +76,7 @@ public class EventRegister {
         if (this.eventStack.get(bukkitEvent) == null) {
 
             // create a new list
-            this.eventStack.put(bukkitEvent, new HashMap<>());
+            this.eventStack.put(bukkitEvent, new ConcurrentHashMap<>());
         }
 
         // add the event to the list
@@ -17,6 +17,8 @@
 package de.qhun.mc.playerdatasync.events;
 
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
@@ -31,6 +33,18 @@ public class PlayerConnectionEvent extends AbstractEvent {
         super(eventRegister);
     }
 
+    /**
+     * runs asynchronously before the player joins. monitor priority to know if
+     * another plugin denied the login.
+     *
+     * @param event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+
+        this.eventRegister.executeEvent(event);
+    }
+
     @EventHandler
     public void onLogin(final PlayerJoinEvent event) {
 
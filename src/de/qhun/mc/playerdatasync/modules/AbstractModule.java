@@ -97,4 +97,16 @@ public abstract class AbstractModule<Config extends ModuleConfiguration> impleme
         // call the bukkit task scheduler api
         this.plugin.getServer().getScheduler().runTaskLaterAsynchronously(this.plugin, r, delayInTicks);
     }
+
+    /**
+     * run a task on the main thread of the server. use this to apply data that
+     * has been loaded asynchronously to the bukkit api.
+     *
+     * @param r
+     */
+    protected void createSyncTask(Runnable r) {
+
+        // call the bukkit task scheduler api
+        this.plugin.getServer().getScheduler().runTask(this.plugin, r);
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules;
+
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.config.AutosaveConfiguration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * saves the data of all online players once per interval. the players are
+ * spread evenly over the ticks of the interval and every tick saves only a
+ * few players within a time budget, so the database load stays flat.
+ *
+ * @author Wrath
+ */
+public class AutosaveScheduler {
+
+    // the plugin to schedule the ticks for
+    private final Plugin plugin;
+
+    // the modules that save the player data
+    private final Supplier<List<PlayerDataModule<?>>> modules;
+
+    // the settings
+    private final long interval;
+    private final int maxPlayersPerTick;
+    private final long tickBudget;
+
+    // the players that have not been saved during the current interval
+    private final Deque<UUID> pendingPlayers = new ArrayDeque<>();
+
+    // the ticks until the next interval begins
+    private long remainingTicks = 0;
+
+    // the share of players that should have been saved allready
+    private double saveCredit = 0;
+
+    // the repeating tick task, null if stopped
+    private BukkitTask task;
+
+    public AutosaveScheduler(Plugin plugin, AutosaveConfiguration configuration, Supplier<List<PlayerDataModule<?>>> modules) {
+
+        this.plugin = plugin;
+        this.modules = modules;
+        this.interval = configuration.getInterval();
+        this.maxPlayersPerTick = configuration.getMaxPlayersPerTick();
+        this.tickBudget = configuration.getTickBudget();
+    }
+
+    /**
+     * starts saving the online players every tick
+     */
+    public void start() {
+
+        if (this.task == null) {
+
+            this.task = this.plugin.getServer().getScheduler().runTaskTimer(this.plugin, this::tick, 1, 1);
+        }
+    }
+
+    /**
+     * stops the saves. players that quit are still saved by the modules
+     */
+    public void stop() {
+
+        if (this.task != null) {
+
+            this.task.cancel();
+            this.task = null;
+        }
+        this.pendingPlayers.clear();
+    }
+
+    /**
+     * saves the players of one tick. this runs on the main thread.
+     */
+    private void tick() {
+
+        // a new interval begins, players that could not be saved during the
+        // last interval stay in front
+        if (this.remainingTicks <= 0) {
+
+            this.remainingTicks = this.interval;
+            Set<UUID> queued = new HashSet<>(this.pendingPlayers);
+            this.plugin.getServer().getOnlinePlayers().forEach(player -> {
+
+                if (queued.add(player.getUniqueId())) {
+
+                    this.pendingPlayers.add(player.getUniqueId());
+                }
+            });
+        }
+
+        // spread the remaining players evenly over the remaining ticks
+        this.saveCredit = Math.min(
+                this.maxPlayersPerTick,
+                this.saveCredit + (double) this.pendingPlayers.size() / this.remainingTicks
+        );
+        this.remainingTicks--;
+
+        long start = System.nanoTime();
+        while (this.saveCredit >= 1 && !this.pendingPlayers.isEmpty()) {
+
+            // the time of this tick is used up, continue with the next tick
+            if (System.nanoTime() - start >= this.tickBudget) {
+                break;
+            }
+
+            // players that quit have been saved allready
+            Player player = this.plugin.getServer().getPlayer(this.pendingPlayers.poll());
+            if (player == null || !player.isOnline()) {
+                continue;
+            }
+
+            this.savePlayer(player);
+            this.saveCredit--;
+        }
+    }
+
+    /**
+     * saves the data of one player in every module
+     *
+     * @param player
+     */
+    private void savePlayer(Player player) {
+
+        this.modules.get().forEach(module -> {
+
+            try {
+
+                module.savePlayerData(player);
+            } catch (Exception ex) {
+
+                Main.log.warning("Error while saving the player in " + module.getClass().getSimpleName());
+                Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            }
+        });
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules;
+
+/**
+ * an entity that is claimed by the server the player is online on. the claim
+ * is stored on join, renewed with the saves and released with the save on
+ * quit, so another server can wait until the data of a switching player has
+ * been saved. a claim expires if the server stops saving it, eg. after a
+ * crash.
+ *
+ * @author Wrath
+ */
+public interface ClaimedEntity {
+
+    /**
+     * get the id of the server that claims the entity
+     *
+     * @return null if the entity has been released
+     */
+    public String getClaimedBy();
+
+    /**
+     * get the time in milliseconds the claim expires at
+     *
+     * @return
+     */
+    public long getClaimedUntil();
+
+    /**
+     * claims or releases the entity
+     *
+     * @param claimedBy the id of the server or null to release the claim
+     * @param claimedUntil the time in milliseconds the claim expires at
+     */
+    public void setClaim(String claimedBy, long claimedUntil);
+}
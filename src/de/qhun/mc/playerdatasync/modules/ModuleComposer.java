@@ -18,7 +18,11 @@ package de.qhun.mc.playerdatasync.modules;
 
 import de.qhun.mc.playerdatasync.DependencyManager;
 import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.config.AutosaveConfiguration;
 import de.qhun.mc.playerdatasync.config.ModuleConfiguration;
+import de.qhun.mc.playerdatasync.database.EntityLookup;
+import de.qhun.mc.playerdatasync.database.GenericRepository;
+import de.qhun.mc.playerdatasync.events.EventRegister;
 import de.qhun.mc.playerdatasync.modules.economy.EconomyConfiguration;
 import de.qhun.mc.playerdatasync.modules.economy.EconomyModule;
 import de.qhun.mc.playerdatasync.modules.inventory.InventoryConfiguration;
@@ -31,7 +35,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 
 /**
@@ -42,9 +53,17 @@ import org.bukkit.plugin.java.JavaPlugin;
  */
 public class ModuleComposer {
 
+    // the time in milliseconds a joining player waits for another server to
+    // save its data on quit
+    private static final long HANDOFF_TIMEOUT = 3000;
+
+    // the ticks between two reads while waiting for another server
+    private static final long HANDOFF_RETRY_TICKS = 5;
+
     // the plugin and dependency management holder
     private final JavaPlugin plugin;
     private final DependencyManager dependencyManager;
+    private final EventRegister eventRegister;
 
     // storage for all modules
     private final Map<Class<? extends Module>, Class<? extends ModuleConfiguration>> modules;
@@ -52,20 +71,39 @@ public class ModuleComposer {
     // storage for all active modules
     private final Map<Class<? extends Module>, Module> activeModules;
 
+    // the references of the events that load the player data
+    private UUID eventReferencePreLogin;
+    private UUID eventReferenceJoin;
+
+    // the player data that has been loaded before the join
+    private final PlayerDataPrefetch prefetch = new PlayerDataPrefetch();
+
+    // saves the online players periodically, null if disabled
+    private AutosaveScheduler autosaveScheduler;
+
+    // the claims of this server
+    private final ServerClaim serverClaim;
+
     /**
      * constructor with given plugin instance
      *
      * @param plugin
      * @param dependencyManager
+     * @param eventRegister
+     * @param serverClaim
      */
     public ModuleComposer(
             JavaPlugin plugin,
-            DependencyManager dependencyManager
+            DependencyManager dependencyManager,
+            EventRegister eventRegister,
+            ServerClaim serverClaim
     ) {
 
         // var storing
         this.dependencyManager = dependencyManager;
         this.plugin = plugin;
+        this.eventRegister = eventRegister;
+        this.serverClaim = serverClaim;
 
         // init the stack
         this.modules = new HashMap<>();
@@ -164,6 +202,25 @@ public class ModuleComposer {
             }
         });
 
+        // load the data of joining players for all modules together
+        this.eventReferencePreLogin = this.eventRegister.addEvent(AsyncPlayerPreLoginEvent.class, this::onPlayerPreLogin);
+        this.eventReferenceJoin = this.eventRegister.addEvent(PlayerJoinEvent.class, this::onPlayerJoin);
+    }
+
+    /**
+     * starts saving the data of online players periodically if enabled. call
+     * this after all modules have been loaded.
+     *
+     * @param configuration
+     */
+    public void startAutosave(AutosaveConfiguration configuration) {
+
+        if (!configuration.isEnabled()) {
+            return;
+        }
+
+        this.autosaveScheduler = new AutosaveScheduler(this.plugin, configuration, this::getPlayerDataModules);
+        this.autosaveScheduler.start();
     }
 
     /**
@@ -182,12 +239,226 @@ public class ModuleComposer {
      */
     public void disableAllModules() {
 
+        // no more player loading
+        if (this.eventReferenceJoin != null) {
+
+            this.eventRegister.removeEvent(AsyncPlayerPreLoginEvent.class, this.eventReferencePreLogin);
+            this.eventRegister.removeEvent(PlayerJoinEvent.class, this.eventReferenceJoin);
+            this.eventReferenceJoin = null;
+        }
+        this.prefetch.clear();
+
+        // the modules save all online players now
+        if (this.autosaveScheduler != null) {
+
+            this.autosaveScheduler.stop();
+            this.autosaveScheduler = null;
+        }
+
         // iterate through all available modules
         this.activeModules.entrySet().forEach((module) -> {
 
             // load that module
             this.disableModule(module.getKey());
         });
+
+        // the modules stored their players, write the delayed stores now
+        if (!GenericRepository.flushPendingStores()) {
+
+            Main.log.severe("Some pending stores could not be written to the database!");
+        }
+    }
+
+    /**
+     * loads the entities of all player data modules with one borrowed
+     * connection after the running saves of the player are done
+     *
+     * @param uuid
+     * @return the entity or null per module
+     */
+    public CompletableFuture<Map<PlayerDataModule<?>, Object>> loadPlayerData(UUID uuid) {
+
+        List<PlayerDataModule<?>> playerDataModules = this.getPlayerDataModules();
+
+        // collect what every module needs
+        List<EntityLookup<?, ?>> lookups = playerDataModules.stream()
+                .map(module -> module.getPlayerDataLookup(uuid))
+                .collect(Collectors.toList());
+
+        // a player that rejoins quickly must not load the data before the
+        // last save has been stored
+        CompletableFuture<?>[] pendingSaves = playerDataModules.stream()
+                .map(module -> module.getPendingSave(uuid).exceptionally(ex -> null))
+                .toArray(CompletableFuture<?>[]::new);
+
+        // one connection for all
+        return CompletableFuture.allOf(pendingSaves)
+                .thenCompose(saved -> GenericRepository.findByPrimariesAsync(lookups))
+                .thenApply(entities -> {
+
+                    Map<PlayerDataModule<?>, Object> playerData = new HashMap<>();
+                    for (int i = 0; i < playerDataModules.size(); i++) {
+
+                        playerData.put(playerDataModules.get(i), entities.get(i));
+                    }
+
+                    return playerData;
+                });
+    }
+
+    /**
+     * hands the loaded entities to their modules. call this on the main
+     * thread.
+     *
+     * @param player
+     * @param playerData
+     */
+    public void applyPlayerData(Player player, Map<PlayerDataModule<?>, Object> playerData) {
+
+        // the player left while loading
+        if (!player.isOnline()) {
+            return;
+        }
+
+        playerData.forEach((module, entity) -> {
+
+            try {
+
+                ((PlayerDataModule<Object>) module).applyPlayerData(player, entity);
+            } catch (Exception ex) {
+
+                Main.log.warning("Error while applying player data in " + module.getClass().getSimpleName());
+                Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            }
+        });
+    }
+
+    /**
+     * get all active modules that load player data
+     *
+     * @return
+     */
+    private List<PlayerDataModule<?>> getPlayerDataModules() {
+
+        return this.activeModules.values().stream()
+                .filter(module -> module instanceof PlayerDataModule)
+                .map(module -> (PlayerDataModule<?>) module)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * loads the data of a player before the join. this runs asynchronously.
+     *
+     * @param event
+     */
+    private void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+
+        // another plugin denied the login
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        // the login waits for the data on its own thread
+        try {
+
+            this.prefetch.put(event.getUniqueId(), this.loadPlayerData(event.getUniqueId()).join());
+        } catch (CompletionException ex) {
+
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * applies the prefetched data of a joining player or loads it
+     * asynchronously if there is none
+     *
+     * @param event
+     */
+    private void onPlayerJoin(PlayerJoinEvent event) {
+
+        Player player = event.getPlayer();
+
+        // prepare the player before any data is applied
+        this.getPlayerDataModules().forEach(module -> {
+
+            try {
+
+                module.preparePlayer(player);
+            } catch (Exception ex) {
+
+                Main.log.warning("Error while preparing the player in " + module.getClass().getSimpleName());
+                Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            }
+        });
+
+        // the data is ready, apply it now
+        Map<PlayerDataModule<?>, Object> prefetched = this.prefetch.take(player.getUniqueId());
+        if (prefetched != null && !this.isClaimed(prefetched)) {
+
+            this.applyPlayerData(player, prefetched);
+            return;
+        }
+
+        // eg. after a reload there is no prefetched data or the player
+        // switched from a server that has not saved the data yet
+        this.loadPlayerDataLater(player, System.currentTimeMillis() + HANDOFF_TIMEOUT, 0);
+    }
+
+    /**
+     * loads the data of a joined player asynchronously and applies it on the
+     * main thread. the data will be read again until no other server claims
+     * it or the deadline has been reached.
+     *
+     * @param player
+     * @param deadline the time in milliseconds to apply the data anyway
+     * @param delay the ticks to wait before loading
+     */
+    private void loadPlayerDataLater(Player player, long deadline, long delay) {
+
+        this.plugin.getServer().getScheduler().runTaskLater(this.plugin, () -> {
+
+            // the player left while waiting
+            if (!player.isOnline()) {
+                return;
+            }
+
+            this.loadPlayerData(player.getUniqueId()).whenComplete((playerData, ex) -> {
+
+                if (ex != null) {
+
+                    Main.log.log(Level.WARNING, ex.getMessage(), ex);
+                    return;
+                }
+
+                // the previous server has not saved the player yet
+                if (this.isClaimed(playerData)) {
+
+                    if (System.currentTimeMillis() < deadline) {
+
+                        this.loadPlayerDataLater(player, deadline, HANDOFF_RETRY_TICKS);
+                        return;
+                    }
+
+                    Main.log.warning("The data of player " + player.getName() + " has not been released by another server in time. Applying the last saved data.");
+                }
+
+                // back to the main thread
+                this.plugin.getServer().getScheduler().runTask(this.plugin, () -> this.applyPlayerData(player, playerData));
+            });
+        }, delay);
+    }
+
+    /**
+     * checks if another server claims any of the loaded entities. expired
+     * claims and claims of this server are taken over at once.
+     *
+     * @param playerData
+     * @return
+     */
+    private boolean isClaimed(Map<PlayerDataModule<?>, Object> playerData) {
+
+        return playerData.values().stream()
+                .anyMatch(entity -> entity instanceof ClaimedEntity && this.serverClaim.isClaimedByOther((ClaimedEntity) entity));
     }
 
     /**
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules;
+
+import de.qhun.mc.playerdatasync.database.EntityLookup;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.bukkit.entity.Player;
+
+/**
+ * a module that loads an entity for every joining player. the module composer
+ * loads the entities of all modules together and hands them to the modules.
+ *
+ * @author Wrath
+ * @param <Entity>
+ */
+public interface PlayerDataModule<Entity> extends Module {
+
+    /**
+     * get the repository and primary value of the player's entity
+     *
+     * @param uuid
+     * @return
+     */
+    public EntityLookup<Entity, ?> getPlayerDataLookup(UUID uuid);
+
+    /**
+     * get the running saves of the player. the entity will be loaded after
+     * they are done, eg. when a player rejoins quickly.
+     *
+     * @param uuid
+     * @return
+     */
+    public default CompletableFuture<Void> getPendingSave(UUID uuid) {
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * prepares a joining player before the entity is applied. this will be
+     * called on the main thread.
+     *
+     * @param player
+     */
+    public default void preparePlayer(Player player) {
+
+        // nothing to prepare
+    }
+
+    /**
+     * applies the loaded entity to the player. this will be called on the
+     * main thread.
+     *
+     * @param player
+     * @param entity the entity or null if the player has no data yet
+     */
+    public void applyPlayerData(Player player, Entity entity);
+
+    /**
+     * saves the data of an online player during the autosave. this will be
+     * called on the main thread, the database should be written
+     * asynchronously.
+     *
+     * @param player
+     */
+    public default void savePlayerData(Player player) {
+
+        // nothing to save
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * holds the player data that has been loaded before the player joined. the
+ * data is only valid for a short time to not apply outdated data.
+ *
+ * @author Wrath
+ */
+class PlayerDataPrefetch {
+
+    // the time in milliseconds the data can be used after loading
+    private static final long TIME_TO_LIVE = 30000;
+
+    // the loaded data by player
+    private final Map<UUID, Prefetched> prefetched = new ConcurrentHashMap<>();
+
+    /**
+     * stores the loaded data of the player
+     *
+     * @param uuid
+     * @param playerData
+     */
+    void put(UUID uuid, Map<PlayerDataModule<?>, Object> playerData) {
+
+        long now = System.currentTimeMillis();
+
+        // forget the data of players that never joined
+        this.prefetched.values().removeIf(entry -> entry.isExpired(now));
+
+        this.prefetched.put(uuid, new Prefetched(playerData, now));
+    }
+
+    /**
+     * removes and returns the loaded data of the player
+     *
+     * @param uuid
+     * @return null if there is no valid data
+     */
+    Map<PlayerDataModule<?>, Object> take(UUID uuid) {
+
+        Prefetched entry = this.prefetched.remove(uuid);
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+
+        return entry.playerData;
+    }
+
+    /**
+     * forgets all loaded data
+     */
+    void clear() {
+
+        this.prefetched.clear();
+    }
+
+    /**
+     * the loaded data and its loading time
+     */
+    private static class Prefetched {
+
+        private final Map<PlayerDataModule<?>, Object> playerData;
+        private final long loadedAt;
+
+        Prefetched(Map<PlayerDataModule<?>, Object> playerData, long loadedAt) {
+
+            this.playerData = playerData;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired(long now) {
+
+            return now - this.loadedAt > TIME_TO_LIVE;
+        }
+    }
+}
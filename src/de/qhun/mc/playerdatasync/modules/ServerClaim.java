@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules;
+
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.config.AutosaveConfiguration;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * claims the entities of the players that are online on this server. every
+ * server has its own id, so a claim of this server and an expired claim of a
+ * crashed server can be taken over at once.
+ *
+ * @author Wrath
+ */
+public class ServerClaim {
+
+    // the name of the file that keeps the id of this server across restarts
+    private static final String SERVER_ID_FILE = "server-id";
+
+    // the shortest time in milliseconds a claim is valid without a save
+    private static final long MINIMUM_LEASE = 600000;
+
+    // the id of this server
+    private final String serverId;
+
+    // the time in milliseconds a claim is valid after it has been stored
+    private final long lease;
+
+    public ServerClaim(Main plugin, AutosaveConfiguration autosaveConfiguration) {
+
+        this.serverId = ServerClaim.loadServerId(
+                new File("plugins" + File.separator + plugin.getName(), SERVER_ID_FILE)
+        );
+
+        // the claim is renewed by every second autosave at least. the
+        // interval is given in ticks.
+        this.lease = autosaveConfiguration.isEnabled()
+                ? Math.max(MINIMUM_LEASE, autosaveConfiguration.getInterval() * 50 * 4)
+                : MINIMUM_LEASE;
+    }
+
+    /**
+     * claims the entity for this server. a claim of this server that is still
+     * valid for more than half of the lease is kept, so the claim will not be
+     * written with every save.
+     *
+     * @param entity
+     */
+    public void claim(ClaimedEntity entity) {
+
+        long now = System.currentTimeMillis();
+        if (this.serverId.equals(entity.getClaimedBy()) && entity.getClaimedUntil() - now > this.lease / 2) {
+            return;
+        }
+
+        entity.setClaim(this.serverId, now + this.lease);
+    }
+
+    /**
+     * releases the claim of the entity
+     *
+     * @param entity
+     */
+    public void release(ClaimedEntity entity) {
+
+        entity.setClaim(null, 0);
+    }
+
+    /**
+     * checks if another server claims the entity. claims of this server and
+     * expired claims are ignored.
+     *
+     * @param entity
+     * @return
+     */
+    public boolean isClaimedByOther(ClaimedEntity entity) {
+
+        return entity.getClaimedBy() != null
+                && !this.serverId.equals(entity.getClaimedBy())
+                && entity.getClaimedUntil() > System.currentTimeMillis();
+    }
+
+    /**
+     * reads the id of this server or creates a new one
+     *
+     * @param file
+     * @return
+     */
+    private static String loadServerId(File file) {
+
+        try {
+
+            if (file.exists()) {
+
+                String serverId = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+                if (!serverId.isEmpty()) {
+                    return serverId;
+                }
+            }
+
+            String serverId = UUID.randomUUID().toString();
+            Files.write(file.toPath(), serverId.getBytes(StandardCharsets.UTF_8));
+            return serverId;
+
+        } catch (IOException ex) {
+
+            // claims of this server can not be taken over after a restart
+            Main.log.warning("Could not store the id of this server, a new one will be used after every restart!");
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            return UUID.randomUUID().toString();
+        }
+    }
+}
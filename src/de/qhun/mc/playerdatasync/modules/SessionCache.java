@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * holds the entities of the online players by uuid and branch. the entity is
+ * cached when the player data is loaded on join and evicted after it has been
+ * saved on quit, so a save does not need to read the entity again.
+ *
+ * @author Wrath
+ * @param <Entity>
+ */
+public class SessionCache<Entity> {
+
+    // the entities by uuid and branch
+    private final Map<List<Object>, Entity> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * caches the entity of the given player
+     *
+     * @param uuid
+     * @param branch the branch or null if the entity has no branch
+     * @param entity
+     */
+    public void put(UUID uuid, String branch, Entity entity) {
+
+        this.sessions.put(Arrays.asList(uuid, branch), entity);
+    }
+
+    /**
+     * get the cached entity of the given player or null
+     *
+     * @param uuid
+     * @param branch the branch or null if the entity has no branch
+     * @return
+     */
+    public Entity get(UUID uuid, String branch) {
+
+        return this.sessions.get(Arrays.asList(uuid, branch));
+    }
+
+    /**
+     * removes the cached entity of the given player
+     *
+     * @param uuid
+     * @param branch the branch or null if the entity has no branch
+     * @return the removed entity or null
+     */
+    public Entity evict(UUID uuid, String branch) {
+
+        return this.sessions.remove(Arrays.asList(uuid, branch));
+    }
+
+    /**
+     * get all cached entities
+     *
+     * @return
+     */
+    public List<Entity> values() {
+
+        return new ArrayList<>(this.sessions.values());
+    }
+
+    /**
+     * removes all cached entities
+     */
+    public void clear() {
+
+        this.sessions.clear();
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules.economy;
+
+import de.qhun.mc.playerdatasync.Main;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+
+/**
+ * an economy that wraps the real economy provider. every successful deposit
+ * and withdrawal will be passed to the economy sync.
+ *
+ * @author Wrath
+ */
+public class CapturingEconomy implements Economy {
+
+    // the real economy provider
+    private final Economy economy;
+
+    // receives the changes
+    private final EconomySync sync;
+
+    // resolves the players of name based calls
+    private final Server server;
+
+    // the players that have left this server by their lower case name. name
+    // based calls are resolved without asking mojang
+    private final Map<String, UUID> knownPlayers = new ConcurrentHashMap<>();
+
+    public CapturingEconomy(Economy economy, EconomySync sync, Server server) {
+
+        this.economy = economy;
+        this.sync = sync;
+        this.server = server;
+    }
+
+    /**
+     * remembers the name of a player that leaves this server
+     *
+     * @param player
+     */
+    public void rememberPlayer(OfflinePlayer player) {
+
+        if (player.getName() != null) {
+
+            this.knownPlayers.put(player.getName().toLowerCase(Locale.ROOT), player.getUniqueId());
+        }
+    }
+
+    /**
+     * resolves the player of a name based call through the online and the
+     * remembered players only
+     *
+     * @param playerName
+     * @return null if the player is unknown
+     */
+    private OfflinePlayer getKnownPlayer(String playerName) {
+
+        Player player = this.server.getPlayerExact(playerName);
+        if (player != null) {
+            return player;
+        }
+
+        UUID uuid = this.knownPlayers.get(playerName.toLowerCase(Locale.ROOT));
+        if (uuid == null) {
+
+            Main.log.warning("The player " + playerName + " is unknown, the balance change will not be synced!");
+            return null;
+        }
+
+        return this.server.getOfflinePlayer(uuid);
+    }
+
+    /**
+     * passes the amount of a successful transaction to the economy sync
+     *
+     * @param player only resolved for successful transactions
+     * @param response
+     * @param sign 1 for deposits, -1 for withdrawals
+     * @return the unchanged response
+     */
+    private EconomyResponse capture(Supplier<OfflinePlayer> player, EconomyResponse response, int sign) {
+
+        if (response != null && response.transactionSuccess()) {
+
+            this.sync.recordChange(player.get(), sign * response.amount);
+        }
+
+        return response;
+    }
+
+    @Override
+    public boolean isEnabled() {
+
+        return this.economy.isEnabled();
+    }
+
+    @Override
+    public String getName() {
+
+        return this.economy.getName();
+    }
+
+    @Override
+    public boolean hasBankSupport() {
+
+        return this.economy.hasBankSupport();
+    }
+
+    @Override
+    public int fractionalDigits() {
+
+        return this.economy.fractionalDigits();
+    }
+
+    @Override
+    public String format(double amount) {
+
+        return this.economy.format(amount);
+    }
+
+    @Override
+    public String currencyNamePlural() {
+
+        return this.economy.currencyNamePlural();
+    }
+
+    @Override
+    public String currencyNameSingular() {
+
+        return this.economy.currencyNameSingular();
+    }
+
+    @Override
+    @Deprecated
+    public boolean hasAccount(String playerName) {
+
+        return this.economy.hasAccount(playerName);
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player) {
+
+        return this.economy.hasAccount(player);
+    }
+
+    @Override
+    @Deprecated
+    public boolean hasAccount(String playerName, String worldName) {
+
+        return this.economy.hasAccount(playerName, worldName);
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player, String worldName) {
+
+        return this.economy.hasAccount(player, worldName);
+    }
+
+    @Override
+    @Deprecated
+    public double getBalance(String playerName) {
+
+        return this.economy.getBalance(playerName);
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player) {
+
+        return this.economy.getBalance(player);
+    }
+
+    @Override
+    @Deprecated
+    public double getBalance(String playerName, String world) {
+
+        return this.economy.getBalance(playerName, world);
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player, String world) {
+
+        return this.economy.getBalance(player, world);
+    }
+
+    @Override
+    @Deprecated
+    public boolean has(String playerName, double amount) {
+
+        return this.economy.has(playerName, amount);
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, double amount) {
+
+        return this.economy.has(player, amount);
+    }
+
+    @Override
+    @Deprecated
+    public boolean has(String playerName, String worldName, double amount) {
+
+        return this.economy.has(playerName, worldName, amount);
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, String worldName, double amount) {
+
+        return this.economy.has(player, worldName, amount);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse withdrawPlayer(String playerName, double amount) {
+
+        return this.capture(() -> this.getKnownPlayer(playerName), this.economy.withdrawPlayer(playerName, amount), -1);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, double amount) {
+
+        return this.capture(() -> player, this.economy.withdrawPlayer(player, amount), -1);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse withdrawPlayer(String playerName, String worldName, double amount) {
+
+        return this.capture(() -> this.getKnownPlayer(playerName), this.economy.withdrawPlayer(playerName, worldName, amount), -1);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, String worldName, double amount) {
+
+        return this.capture(() -> player, this.economy.withdrawPlayer(player, worldName, amount), -1);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse depositPlayer(String playerName, double amount) {
+
+        return this.capture(() -> this.getKnownPlayer(playerName), this.economy.depositPlayer(playerName, amount), 1);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, double amount) {
+
+        return this.capture(() -> player, this.economy.depositPlayer(player, amount), 1);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse depositPlayer(String playerName, String worldName, double amount) {
+
+        return this.capture(() -> this.getKnownPlayer(playerName), this.economy.depositPlayer(playerName, worldName, amount), 1);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, String worldName, double amount) {
+
+        return this.capture(() -> player, this.economy.depositPlayer(player, worldName, amount), 1);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse createBank(String name, String player) {
+
+        return this.economy.createBank(name, player);
+    }
+
+    @Override
+    public EconomyResponse createBank(String name, OfflinePlayer player) {
+
+        return this.economy.createBank(name, player);
+    }
+
+    @Override
+    public EconomyResponse deleteBank(String name) {
+
+        return this.economy.deleteBank(name);
+    }
+
+    @Override
+    public EconomyResponse bankBalance(String name) {
+
+        return this.economy.bankBalance(name);
+    }
+
+    @Override
+    public EconomyResponse bankHas(String name, double amount) {
+
+        return this.economy.bankHas(name, amount);
+    }
+
+    @Override
+    public EconomyResponse bankWithdraw(String name, double amount) {
+
+        return this.economy.bankWithdraw(name, amount);
+    }
+
+    @Override
+    public EconomyResponse bankDeposit(String name, double amount) {
+
+        return this.economy.bankDeposit(name, amount);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse isBankOwner(String name, String playerName) {
+
+        return this.economy.isBankOwner(name, playerName);
+    }
+
+    @Override
+    public EconomyResponse isBankOwner(String name, OfflinePlayer player) {
+
+        return this.economy.isBankOwner(name, player);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse isBankMember(String name, String playerName) {
+
+        return this.economy.isBankMember(name, playerName);
+    }
+
+    @Override
+    public EconomyResponse isBankMember(String name, OfflinePlayer player) {
+
+        return this.economy.isBankMember(name, player);
+    }
+
+    @Override
+    public List<String> getBanks() {
+
+        return this.economy.getBanks();
+    }
+
+    @Override
+    @Deprecated
+    public boolean createPlayerAccount(String playerName) {
+
+        return this.economy.createPlayerAccount(playerName);
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player) {
+
+        return this.economy.createPlayerAccount(player);
+    }
+
+    @Override
+    @Deprecated
+    public boolean createPlayerAccount(String playerName, String worldName) {
+
+        return this.economy.createPlayerAccount(playerName, worldName);
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player, String worldName) {
+
+        return this.economy.createPlayerAccount(player, worldName);
+    }
+}
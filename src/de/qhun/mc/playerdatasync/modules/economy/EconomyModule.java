@@ -17,31 +17,45 @@
 package de.qhun.mc.playerdatasync.modules.economy;
 
 import de.qhun.mc.playerdatasync.DependencyManager;
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.database.EntityLookup;
 import de.qhun.mc.playerdatasync.modules.AbstractModule;
+import de.qhun.mc.playerdatasync.modules.PlayerDataModule;
+import de.qhun.mc.playerdatasync.modules.SessionCache;
 import de.qhun.mc.playerdatasync.util.Autoload;
 import de.qhun.mc.playerdatasync.util.ServiceProvider;
+import java.util.Set;
 import java.util.UUID;
-import org.bukkit.event.player.PlayerJoinEvent;
+import java.util.concurrent.ConcurrentHashMap;
 import org.bukkit.event.player.PlayerQuitEvent;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.ServicePriority;
 
 /**
  * the economy module. handles sync the player's money
  *
  * @author Wrath
  */
-public class EconomyModule extends AbstractModule<EconomyConfiguration> {
+public class EconomyModule extends AbstractModule<EconomyConfiguration> implements PlayerDataModule<PlayerAccount> {
 
     // holds the repository to access the player data
     private PlayerAccountRepository playerAccountRepository;
     private Economy economy;
     private EconomySync sync;
 
+    // the economy that has been registered in front of the real one
+    private CapturingEconomy capturingEconomy;
+
+    // the accounts of the online players
+    private final SessionCache<PlayerAccount> sessionCache = new SessionCache<>();
+
+    // joining players whose loaded account has not been applied yet
+    private final Set<UUID> loadingPlayers = ConcurrentHashMap.newKeySet();
+
     @Autoload
     private ServiceProvider serviceProvider;
 
-    private UUID eventReferenceJoin;
     private UUID eventReferenceQuit;
 
     @Override
@@ -60,7 +74,8 @@ public class EconomyModule extends AbstractModule<EconomyConfiguration> {
 
         // create the sync handler
         this.sync = new EconomySync(
-                economy, this.playerAccountRepository,
+                economy, this.playerAccountRepository, this.sessionCache, this.plugin.getServer(),
+                runnable -> this.createAsyncTask(runnable, 0), this::createSyncTask,
                 this.configuration.getSyncInterval()
         );
     }
@@ -68,13 +83,19 @@ public class EconomyModule extends AbstractModule<EconomyConfiguration> {
     @Override
     public boolean enable() {
 
-        // add player join event
-        this.eventReferenceJoin = this.eventRegister.addEvent(PlayerJoinEvent.class, this::onPlayerJoin);
+        // add player quit event, the join is handled by the module composer
         this.eventReferenceQuit = this.eventRegister.addEvent(PlayerQuitEvent.class, this::onPlayerQuit);
 
         // start sync process if enabled
         if (this.configuration.isSyncEnabled()) {
 
+            // plugins that get the economy from now on will use the
+            // capturing one
+            this.capturingEconomy = new CapturingEconomy(this.economy, this.sync, this.plugin.getServer());
+            this.plugin.getServer().getServicesManager().register(
+                    Economy.class, this.capturingEconomy, this.plugin, ServicePriority.Highest
+            );
+
             this.sync.startSync();
         }
 
@@ -89,17 +110,21 @@ public class EconomyModule extends AbstractModule<EconomyConfiguration> {
         this.logInfoPrefixed("Module is disableing. Saving all economy data for the online players.");
 
         // removes the events from the event register
-        this.eventRegister.removeEvent(PlayerJoinEvent.class, this.eventReferenceJoin);
         this.eventRegister.removeEvent(PlayerQuitEvent.class, this.eventReferenceQuit);
 
-        // stop sync in enabled
+        // stop capturing if sync is enabled
         if (this.configuration.isSyncEnabled()) {
 
-            this.sync.stopSync();
+            this.plugin.getServer().getServicesManager().unregister(Economy.class, this.capturingEconomy);
         }
 
         // save the balance for all online player
         this.plugin.getServer().getOnlinePlayers().forEach(this::saveBalance);
+        this.sessionCache.clear();
+        this.loadingPlayers.clear();
+
+        // stores the pending changes of the saves as well
+        this.sync.stopSync();
 
         return true;
     }
@@ -117,30 +142,52 @@ public class EconomyModule extends AbstractModule<EconomyConfiguration> {
     }
 
     /**
-     * handles the player join event
+     * get the account of the player
      *
-     * @param event
+     * @param uuid
+     * @return
      */
-    private void onPlayerJoin(PlayerJoinEvent event) {
+    @Override
+    public EntityLookup<PlayerAccount, ?> getPlayerDataLookup(UUID uuid) {
 
-        // create an async task to not disturb the user while joining the game
-        // on the main thread of the server
-        this.createAsyncTask(() -> {
+        return new EntityLookup<>(this.playerAccountRepository, uuid);
+    }
 
-            // get player domain model
-            UUID playerUuid = event.getPlayer().getUniqueId();
-            PlayerAccount player = this.playerAccountRepository.findByPrimary(playerUuid);
+    /**
+     * prepares a joining player
+     *
+     * @param player
+     */
+    @Override
+    public void preparePlayer(Player player) {
 
-            // if there is a change in the players balance, sync it
-            if (player != null && player.getBalance() != this.economy.getBalance(event.getPlayer())) {
+        // the balance must not be saved until the loaded one has been applied
+        this.loadingPlayers.add(player.getUniqueId());
+    }
 
-                // give the player that amount of money he/she owns
-                this.economy.withdrawPlayer(event.getPlayer(), this.economy.getBalance(event.getPlayer()));
-                this.economy.depositPlayer(event.getPlayer(), player.getBalance());
-            }
+    /**
+     * applies the loaded account of a joining player
+     *
+     * @param player
+     * @param playerAccount
+     */
+    @Override
+    public void applyPlayerData(Player player, PlayerAccount playerAccount) {
+
+        // remember the account for the quit
+        this.sessionCache.put(
+                player.getUniqueId(), null,
+                playerAccount != null ? playerAccount : new PlayerAccount(player.getUniqueId())
+        );
+        this.loadingPlayers.remove(player.getUniqueId());
+
+        // if there is a change in the players balance, sync it
+        if (playerAccount != null && playerAccount.getBalance() != this.economy.getBalance(player)) {
 
-            // wait 10 ticks, this should equal to 500 milliseconds
-        }, 10L);
+            // give the player that amount of money he/she owns
+            this.economy.withdrawPlayer(player, this.economy.getBalance(player));
+            this.economy.depositPlayer(player, playerAccount.getBalance());
+        }
     }
 
     /**
@@ -151,29 +198,89 @@ public class EconomyModule extends AbstractModule<EconomyConfiguration> {
     private void onPlayerQuit(PlayerQuitEvent event) {
 
         this.saveBalance(event.getPlayer());
+
+        // name based changes of the player are synced from now on
+        if (this.capturingEconomy != null) {
+
+            this.capturingEconomy.rememberPlayer(event.getPlayer());
+        }
+
+        // the account has been saved, forget it
+        this.sessionCache.evict(event.getPlayer().getUniqueId(), null);
+        this.loadingPlayers.remove(event.getPlayer().getUniqueId());
     }
 
     /**
-     * saves the balance for the player
+     * saves the balance of an online player during the autosave. the balance
+     * is read on the main thread and stored asynchronously.
+     *
+     * @param player
+     */
+    @Override
+    public void savePlayerData(Player player) {
+
+        // the loaded account has not been applied yet
+        PlayerAccount playerAccount = this.sessionCache.get(player.getUniqueId(), null);
+        if (playerAccount == null) {
+            return;
+        }
+
+        // nothing has changed since the last save
+        double balance = this.economy.getBalance(player);
+        double deltaBalance = balance - playerAccount.getBalance();
+        if (deltaBalance == 0) {
+            return;
+        }
+        playerAccount.setBalance(balance);
+
+        // the change stays pending until the database has added it. the
+        // order of the saves does not matter
+        this.sync.addChange(player.getUniqueId(), deltaBalance, balance);
+    }
+
+    /**
+     * saves the balance for the player. the change will be stored
+     * asynchronously.
      *
      * @param player
      */
     private void saveBalance(Player player) {
 
-        // get player from db
+        // the loaded balance has not been applied yet, the stored one is
+        // still up to date
         UUID playerUuid = player.getUniqueId();
-        PlayerAccount playerAccount = this.playerAccountRepository.findByPrimary(playerUuid);
+        if (this.loadingPlayers.contains(playerUuid)) {
+            return;
+        }
+
+        // get the account from the session or from db if the player data
+        // has not been loaded
+        PlayerAccount playerAccount = this.sessionCache.get(playerUuid, null);
+        if (playerAccount == null) {
+
+            playerAccount = this.playerAccountRepository.findByPrimary(playerUuid);
+        }
 
         // check if a player instance exists
         if (playerAccount == null) {
 
             playerAccount = new PlayerAccount(player.getUniqueId());
+            playerAccount.setBalance(this.economy.getBalance(player));
+
+            if (!this.playerAccountRepository.store(playerAccount).isStored()) {
+
+                Main.log.warning("Could not save the balance of player " + playerUuid);
+            }
+            return;
         }
 
-        // get current balance
-        playerAccount.setBalance(this.economy.getBalance(player));
+        // only the change since the balance has been read will be added.
+        // changes of other servers in the meantime are kept
+        double balance = this.economy.getBalance(player);
+        double deltaBalance = balance - playerAccount.getBalance();
+        playerAccount.setBalance(balance);
 
-        // save the balance
-        this.playerAccountRepository.store(playerAccount);
+        // a failed write will be repeated with the next tick
+        this.sync.addChange(playerUuid, deltaBalance, balance);
     }
 }
@@ -16,36 +16,92 @@
  */
 package de.qhun.mc.playerdatasync.modules.economy;
 
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.database.GenericRepository;
+import de.qhun.mc.playerdatasync.modules.SessionCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
 
 /**
+ * stores the balance changes of players that are not online on this server.
+ * the changes are captured by the economy decorator when they happen and are
+ * written asynchronously. the balance changes of online players are handed
+ * over when they are saved. accounts of online players that have been changed
+ * by other servers are read every interval and applied to the local balance.
  *
  * @author Wrath
  */
 public class EconomySync {
 
+    // the amount of accounts that will be read at once
+    private static final int PAGE_SIZE = 200;
+
+    // changes that have been stamped by up to this time in milliseconds
+    // before the previous tick but committed afterwards will be read as well
+    private static final long COMMIT_TOLERANCE = 5000;
+
     // the interval in seconds
     private final int intervalSeconds;
 
-    // the economy instance holder
+    // the real economy provider
     private final Economy economy;
 
     // the repository holder
     private final PlayerAccountRepository repository;
 
+    // resolves the players of new accounts
+    private final Server server;
+
+    // the accounts of the online players
+    private final SessionCache<PlayerAccount> sessionCache;
+
+    // runs the asynchronous writes
+    private final Executor asyncExecutor;
+
+    // runs tasks on the main thread
+    private final Executor syncExecutor;
+
+    // changes before this database time in milliseconds have been read
+    private volatile long highWaterMark;
+
+    // the accounts whose local balance changed while they have been read
+    private final Set<UUID> retryAccounts = ConcurrentHashMap.newKeySet();
+
     // the timer instance
     private final Timer timer;
 
-    public EconomySync(Economy economy, PlayerAccountRepository repository, int intervalSeconds) {
+    // the summed up changes of every player that are not stored yet
+    private final Map<UUID, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+
+    // is a write allready scheduled?
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    public EconomySync(Economy economy, PlayerAccountRepository repository, SessionCache<PlayerAccount> sessionCache,
+            Server server, Executor asyncExecutor, Executor syncExecutor, int intervalSeconds) {
 
         this.intervalSeconds = intervalSeconds;
         this.economy = economy;
         this.repository = repository;
+        this.sessionCache = sessionCache;
+        this.server = server;
+        this.asyncExecutor = asyncExecutor;
+        this.syncExecutor = syncExecutor;
         this.timer = new Timer();
     }
 
@@ -54,6 +110,10 @@ public class EconomySync {
      */
     public void startSync() {
 
+        // the balance of every joining player is read on join. all accounts
+        // are stamped with the database clock
+        this.highWaterMark = GenericRepository.getDatabaseTime();
+
         // set the timer schedule
         this.timer.scheduleAtFixedRate(
                 this.createTask(() -> {
@@ -66,12 +126,62 @@ public class EconomySync {
     }
 
     /**
-     * stop the sync process
+     * stop the sync process and store all pending changes
      */
     public void stopSync() {
 
         // stop the current timer
         this.timer.cancel();
+
+        this.flush();
+    }
+
+    /**
+     * remembers a balance change. changes of online players are ignored, their
+     * balance will be stored when they quit. the balance is read on the
+     * calling thread.
+     *
+     * @param player
+     * @param amount positive for deposits, negative for withdrawals
+     */
+    public void recordChange(OfflinePlayer player, double amount) {
+
+        if (player == null || player.isOnline()) {
+            return;
+        }
+
+        this.addChange(player.getUniqueId(), amount, this.economy.getBalance(player));
+    }
+
+    /**
+     * stores a balance change asynchronously. a change that could not be
+     * stored will be repeated with the next tick.
+     *
+     * @param uuid
+     * @param amount positive for deposits, negative for withdrawals
+     * @param balance the local balance after the change, it will be stored
+     * if the player has never been stored before
+     */
+    public void addChange(UUID uuid, double amount, double balance) {
+
+        if (amount == 0) {
+            return;
+        }
+
+        this.pendingChanges.merge(uuid, new PendingChange(amount, balance), PendingChange::add);
+
+        // one write for all changes until then
+        if (this.flushScheduled.compareAndSet(false, true)) {
+
+            try {
+
+                this.asyncExecutor.execute(this::flush);
+            } catch (RuntimeException ex) {
+
+                // eg. while disabling, the next tick or the stop will store it
+                this.flushScheduled.set(false);
+            }
+        }
     }
 
     /**
@@ -91,52 +201,217 @@ public class EconomySync {
     }
 
     /**
-     * the timer tick. lets sync!
+     * the timer tick. stores changes that could not be stored before and reads
+     * the changes of other servers
      */
     private void timerTick() {
 
-        // get all player
-        Map<PlayerAccount, OfflinePlayer> players = this.repository.findAll()
-                .stream()
-                .collect(Collectors.toMap(
-                        account -> account,
-                        account -> account.toBukkitPlayer()
-                ));
-
-        // take all offline player and calculate the delta
-        players.entrySet().stream()
-                .filter(map -> !map.getValue().isOnline())
-                .forEach(map -> {
-
-                    // get map values
-                    OfflinePlayer bukkitPlayer = map.getValue();
-                    PlayerAccount account = map.getKey();
-
-                    // check if the balance of the player difers from the current
-                    // balance in the database
-                    double playerBalance = this.economy.getBalance(bukkitPlayer);
-                    if (playerBalance != account.getBalance()) {
-
-                        // update the difference into the database
-                        double deltaBalance = playerBalance - account.getBalance();
-                        account.setBalance(account.getBalance() + deltaBalance);
-
-                        // store the new balance
-                        this.repository.store(account);
-
-                        // update the local balance to avoid updating it again
-                        this.economy.withdrawPlayer(bukkitPlayer, playerBalance);
-                        this.economy.depositPlayer(bukkitPlayer, account.getBalance());
-
-                        // print an information
-                        System.out.println(String.format(
-                                "Updated %s's balance by %12.2f",
-                                bukkitPlayer.getName(),
-                                deltaBalance
-                        ));
-                    }
-
-                });
+        this.flush();
+
+        try {
+
+            this.readChanges();
+        } catch (Exception ex) {
+
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * reads the accounts that have been changed since the last tick page by
+     * page and applies the changes of online players on the main thread
+     */
+    private void readChanges() {
+
+        // the next tick continues at this time
+        long tickStart = GenericRepository.getDatabaseTime();
+        if (tickStart < 0) {
+            return;
+        }
+
+        // the local balances before reading. a change will only be applied if
+        // the local balance is still the same
+        Map<UUID, Double> knownBalances = new HashMap<>();
+        this.sessionCache.values().forEach(session -> knownBalances.put(session.getUuid(), session.getBalance()));
+
+        Map<UUID, PlayerAccount> changedAccounts = new HashMap<>();
+
+        // accounts that could not be applied with the previous tick
+        for (UUID uuid : new ArrayList<>(this.retryAccounts)) {
+
+            this.retryAccounts.remove(uuid);
+            PlayerAccount account = this.repository.findByPrimary(uuid);
+            if (account != null && knownBalances.containsKey(uuid)) {
+
+                changedAccounts.put(uuid, account);
+            }
+        }
+
+        // continue after the last account of the previous page
+        List<PlayerAccount> page = this.repository.findAfter(
+                "updatedAt", this.highWaterMark - COMMIT_TOLERANCE, null, PAGE_SIZE
+        );
+        while (!page.isEmpty()) {
+
+            // only online players need to be updated
+            page.stream()
+                    .filter(account -> knownBalances.containsKey(account.getUuid()))
+                    .forEach(account -> changedAccounts.put(account.getUuid(), account));
+
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+
+            PlayerAccount last = page.get(page.size() - 1);
+            page = this.repository.findAfter("updatedAt", last.getUpdatedAt(), last.getUuid(), PAGE_SIZE);
+        }
+
+        this.highWaterMark = tickStart;
+
+        if (!changedAccounts.isEmpty()) {
+
+            this.syncExecutor.execute(() -> this.applyChanges(changedAccounts.values(), knownBalances));
+        }
+    }
+
+    /**
+     * applies the difference between the stored and the known balance to the
+     * local balance of online players. accounts whose local balance has been
+     * changed since they have been read will be read again with the next tick.
+     *
+     * @param changedAccounts
+     * @param knownBalances the local balances before reading the accounts
+     */
+    private void applyChanges(Collection<PlayerAccount> changedAccounts, Map<UUID, Double> knownBalances) {
+
+        changedAccounts.forEach(account -> {
+
+            // the player might have left in the meantime
+            PlayerAccount session = this.sessionCache.get(account.getUuid(), null);
+            Player player = this.server.getPlayer(account.getUuid());
+            if (session == null || player == null) {
+                return;
+            }
+
+            // a save has been written while reading or is not stored yet,
+            // the stored balance might not contain it
+            if (session.getBalance() != knownBalances.get(account.getUuid())
+                    || this.pendingChanges.containsKey(account.getUuid())) {
+
+                this.retryAccounts.add(account.getUuid());
+                return;
+            }
+
+            // the changes are applied once, reading an account twice is fine
+            double deltaBalance = account.getBalance() - session.getBalance();
+            if (deltaBalance == 0) {
+                return;
+            }
+
+            if (deltaBalance > 0) {
+
+                this.economy.depositPlayer(player, deltaBalance);
+            } else {
+
+                this.economy.withdrawPlayer(player, -deltaBalance);
+            }
+            session.setBalance(account.getBalance());
+
+            // print an information
+            Main.log.info(String.format(
+                    "Updated %s's balance by %12.2f",
+                    player.getName(),
+                    deltaBalance
+            ));
+        });
+    }
+
+    /**
+     * stores all pending changes. one flush runs at a time, so a change will
+     * not be stored twice.
+     */
+    private synchronized void flush() {
+
+        this.flushScheduled.set(false);
+
+        for (UUID uuid : new ArrayList<>(this.pendingChanges.keySet())) {
+
+            PendingChange change = this.pendingChanges.get(uuid);
+            if (change == null) {
+                continue;
+            }
+
+            try {
+
+                this.storeChange(uuid, change);
+
+                // the change stays pending until it has been stored, changes
+                // of the meantime are kept
+                this.pendingChanges.computeIfPresent(uuid, (key, pending) -> pending.subtract(change));
+            } catch (Exception ex) {
+
+                // keep the change for the next tick
+                Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * adds the change to the stored balance of the player in one statement
+     *
+     * @param uuid
+     * @param change
+     */
+    private void storeChange(UUID uuid, PendingChange change) {
+
+        // the local balance allready contains the change. it will only be
+        // stored if the player has never been stored before
+        PlayerAccount account = new PlayerAccount(uuid);
+        account.setBalance(change.balance);
+
+        if (!this.repository.increment(account, "balance", change.amount, Arrays.asList("updatedAt"))) {
+
+            throw new IllegalStateException("Could not store the balance change of player " + uuid);
+        }
+    }
+
+    /**
+     * the summed up changes of one player and the local balance after the
+     * last one
+     */
+    private static class PendingChange {
+
+        private final double amount;
+        private final double balance;
+
+        PendingChange(double amount, double balance) {
+
+            this.amount = amount;
+            this.balance = balance;
+        }
+
+        /**
+         * adds a newer change
+         *
+         * @param change
+         * @return
+         */
+        PendingChange add(PendingChange change) {
+
+            return new PendingChange(this.amount + change.amount, change.balance);
+        }
+
+        /**
+         * removes a stored change
+         *
+         * @param change
+         * @return null if nothing is left to store
+         */
+        PendingChange subtract(PendingChange change) {
+
+            double amount = this.amount - change.amount;
 
+            return amount != 0 ? new PendingChange(amount, this.balance) : null;
+        }
     }
 }
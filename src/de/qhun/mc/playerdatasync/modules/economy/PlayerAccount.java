@@ -19,9 +19,11 @@ package de.qhun.mc.playerdatasync.modules.economy;
 import de.qhun.mc.playerdatasync.database.decorators.Column;
 import de.qhun.mc.playerdatasync.database.decorators.ColumnType;
 import de.qhun.mc.playerdatasync.database.decorators.Entity;
+import de.qhun.mc.playerdatasync.database.decorators.Indexed;
 import de.qhun.mc.playerdatasync.database.decorators.NotNull;
 import de.qhun.mc.playerdatasync.database.decorators.Primary;
 import de.qhun.mc.playerdatasync.database.decorators.Table;
+import de.qhun.mc.playerdatasync.database.decorators.Timestamp;
 import de.qhun.mc.playerdatasync.util.Autoload;
 import org.bukkit.Server;
 import java.util.UUID;
@@ -49,7 +51,15 @@ public class PlayerAccount {
 
     @Column(type = ColumnType.Double)
     @NotNull
-    private double balance;
+    private volatile double balance;
+
+    // the time in milliseconds of the last balance change, set by the
+    // database clock
+    @Column(type = ColumnType.Long)
+    @Timestamp
+    @Indexed
+    @NotNull
+    private long updatedAt;
 
     protected PlayerAccount() {
     }
@@ -74,6 +84,17 @@ public class PlayerAccount {
         this.balance = balance;
     }
 
+    /**
+     * get the time in milliseconds of the last balance change. the time
+     * is read from the database clock.
+     *
+     * @return
+     */
+    public long getUpdatedAt() {
+
+        return this.updatedAt;
+    }
+
     /**
      * converts this instance to a bukkit player instance
      *
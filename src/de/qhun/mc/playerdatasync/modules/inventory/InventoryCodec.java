@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules.inventory;
+
+import de.qhun.mc.playerdatasync.util.VarInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+/**
+ * a compact binary format for inventory contents. only the filled slots are
+ * written. every item is stored as the tree of its serialized bukkit values,
+ * repeated strings like map keys are written once per payload and referenced
+ * afterwards.
+ *
+ * layout: magic (2 bytes), version, inventory type, size, filled slot count,
+ * then slot index and item for every filled slot.
+ *
+ * @author Wrath
+ */
+class InventoryCodec {
+
+    // the first bytes of every encoded inventory. they are not part of the
+    // base64 alphabet, so legacy rows can be detected safely
+    private static final byte MAGIC_FIRST = (byte) 0xB1;
+    private static final byte MAGIC_SECOND = (byte) 0x9E;
+
+    // the current version of the format
+    private static final int VERSION = 1;
+
+    // the value tags
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_FLOAT = 5;
+    private static final int TAG_SHORT = 6;
+    private static final int TAG_BYTE = 7;
+    private static final int TAG_BOOLEAN = 8;
+    private static final int TAG_LIST = 9;
+    private static final int TAG_MAP = 10;
+    private static final int TAG_SERIALIZABLE = 11;
+    private static final int TAG_OBJECT = 12;
+
+    /**
+     * checks if the given data has been written by this codec
+     *
+     * @param data
+     * @return
+     */
+    public static boolean isEncoded(byte[] data) {
+
+        return data != null && data.length > 2 && data[0] == MAGIC_FIRST && data[1] == MAGIC_SECOND;
+    }
+
+    /**
+     * encodes the given inventory contents
+     *
+     * @param type
+     * @param contents
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encode(InventoryType type, ItemStack[] contents) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(256);
+        Writer writer = new Writer(new DataOutputStream(outputStream));
+
+        // the header
+        writer.output.writeByte(MAGIC_FIRST);
+        writer.output.writeByte(MAGIC_SECOND);
+        writer.output.writeByte(VERSION);
+        writer.writeString(type.name());
+        VarInt.write(writer.output, contents.length);
+
+        // count the filled slots first
+        int filled = 0;
+        for (ItemStack item : contents) {
+
+            if (item != null) {
+                filled++;
+            }
+        }
+        VarInt.write(writer.output, filled);
+
+        // every filled slot with its index
+        for (int slot = 0; slot < contents.length; slot++) {
+
+            if (contents[slot] != null) {
+
+                VarInt.write(writer.output, slot);
+                writer.writeValue(contents[slot].serialize());
+            }
+        }
+
+        writer.output.flush();
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * decodes inventory contents that have been encoded by this codec
+     *
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public static ItemStack[] decode(byte[] data) throws IOException {
+
+        Reader reader = new Reader(new DataInputStream(new ByteArrayInputStream(data, 2, data.length - 2)));
+
+        // check the header
+        int version = reader.input.readUnsignedByte();
+        if (version != VERSION) {
+
+            throw new IOException("Unsupported inventory format version " + version);
+        }
+
+        // the type is informational, the size is stored explicitly
+        reader.readString();
+        ItemStack[] contents = new ItemStack[VarInt.read(reader.input)];
+
+        // read every filled slot
+        int filled = VarInt.read(reader.input);
+        for (int i = 0; i < filled; i++) {
+
+            int slot = VarInt.read(reader.input);
+            contents[slot] = ItemStack.deserialize((Map<String, Object>) reader.readValue());
+        }
+
+        return contents;
+    }
+
+    /**
+     * encodes one item on its own, without references to other slots
+     *
+     * @param item
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encodeItem(ItemStack item) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64);
+        Writer writer = new Writer(new DataOutputStream(outputStream));
+
+        writer.writeValue(item.serialize());
+
+        writer.output.flush();
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * decodes one item that has been encoded by encodeItem()
+     *
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public static ItemStack decodeItem(byte[] data) throws IOException {
+
+        Reader reader = new Reader(new DataInputStream(new ByteArrayInputStream(data)));
+
+        return ItemStack.deserialize((Map<String, Object>) reader.readValue());
+    }
+
+    /**
+     * writes tagged values and remembers the strings of one payload
+     */
+    private static class Writer {
+
+        private final DataOutputStream output;
+
+        // every written string with its reference number
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        public Writer(DataOutputStream output) {
+
+            this.output = output;
+        }
+
+        /**
+         * writes a string or a reference to an allready written string
+         *
+         * @param value
+         * @throws IOException
+         */
+        public void writeString(String value) throws IOException {
+
+            Integer reference = this.strings.get(value);
+            if (reference != null) {
+
+                VarInt.write(this.output, reference + 1);
+                return;
+            }
+
+            // a new string, 0 followed by the utf-8 bytes
+            this.strings.put(value, this.strings.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            VarInt.write(this.output, 0);
+            VarInt.write(this.output, bytes.length);
+            this.output.write(bytes);
+        }
+
+        /**
+         * writes a value with its tag
+         *
+         * @param value
+         * @throws IOException
+         */
+        public void writeValue(Object value) throws IOException {
+
+            if (value == null) {
+
+                this.output.writeByte(TAG_NULL);
+            } else if (value instanceof String) {
+
+                this.output.writeByte(TAG_STRING);
+                this.writeString((String) value);
+            } else if (value instanceof Integer) {
+
+                this.output.writeByte(TAG_INTEGER);
+                this.output.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+
+                this.output.writeByte(TAG_LONG);
+                this.output.writeLong((Long) value);
+            } else if (value instanceof Double) {
+
+                this.output.writeByte(TAG_DOUBLE);
+                this.output.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+
+                this.output.writeByte(TAG_FLOAT);
+                this.output.writeFloat((Float) value);
+            } else if (value instanceof Short) {
+
+                this.output.writeByte(TAG_SHORT);
+                this.output.writeShort((Short) value);
+            } else if (value instanceof Byte) {
+
+                this.output.writeByte(TAG_BYTE);
+                this.output.writeByte((Byte) value);
+            } else if (value instanceof Boolean) {
+
+                this.output.writeByte(TAG_BOOLEAN);
+                this.output.writeBoolean((Boolean) value);
+            } else if (value instanceof List) {
+
+                List<?> list = (List<?>) value;
+                this.output.writeByte(TAG_LIST);
+                VarInt.write(this.output, list.size());
+                for (Object element : list) {
+
+                    this.writeValue(element);
+                }
+            } else if (value instanceof Map) {
+
+                this.output.writeByte(TAG_MAP);
+                this.writeEntries((Map<?, ?>) value);
+            } else if (value instanceof ConfigurationSerializable) {
+
+                // nested bukkit objects like item meta, stored with their alias
+                ConfigurationSerializable serializable = (ConfigurationSerializable) value;
+                this.output.writeByte(TAG_SERIALIZABLE);
+                this.writeString(ConfigurationSerialization.getAlias(serializable.getClass()));
+                this.writeEntries(serializable.serialize());
+            } else {
+
+                // unknown values fall back to the bukkit object stream
+                ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+                try (BukkitObjectOutputStream objectStream = new BukkitObjectOutputStream(objectBytes)) {
+
+                    objectStream.writeObject(value);
+                }
+
+                this.output.writeByte(TAG_OBJECT);
+                VarInt.write(this.output, objectBytes.size());
+                objectBytes.writeTo(this.output);
+            }
+        }
+
+        /**
+         * writes the entries of a map, the keys are strings
+         *
+         * @param map
+         * @throws IOException
+         */
+        private void writeEntries(Map<?, ?> map) throws IOException {
+
+            VarInt.write(this.output, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+
+                this.writeString(String.valueOf(entry.getKey()));
+                this.writeValue(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * reads tagged values and resolves the string references of one payload
+     */
+    private static class Reader {
+
+        private final DataInputStream input;
+
+        // every read string in the order of appearance
+        private final List<String> strings = new ArrayList<>();
+
+        public Reader(DataInputStream input) {
+
+            this.input = input;
+        }
+
+        /**
+         * reads a string or resolves its reference
+         *
+         * @return
+         * @throws IOException
+         */
+        public String readString() throws IOException {
+
+            int reference = VarInt.read(this.input);
+            if (reference > 0) {
+
+                return this.strings.get(reference - 1);
+            }
+
+            byte[] bytes = new byte[VarInt.read(this.input)];
+            this.input.readFully(bytes);
+
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            this.strings.add(value);
+            return value;
+        }
+
+        /**
+         * reads a tagged value
+         *
+         * @return
+         * @throws IOException
+         */
+        public Object readValue() throws IOException {
+
+            int tag = this.input.readUnsignedByte();
+            switch (tag) {
+
+                case TAG_NULL:
+                    return null;
+                case TAG_STRING:
+                    return this.readString();
+                case TAG_INTEGER:
+                    return this.input.readInt();
+                case TAG_LONG:
+                    return this.input.readLong();
+                case TAG_DOUBLE:
+                    return this.input.readDouble();
+                case TAG_FLOAT:
+                    return this.input.readFloat();
+                case TAG_SHORT:
+                    return this.input.readShort();
+                case TAG_BYTE:
+                    return this.input.readByte();
+                case TAG_BOOLEAN:
+                    return this.input.readBoolean();
+                case TAG_LIST:
+                    int size = VarInt.read(this.input);
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+
+                        list.add(this.readValue());
+                    }
+                    return list;
+                case TAG_MAP:
+                    return this.readEntries();
+                case TAG_SERIALIZABLE:
+                    // restore the alias so bukkit can find the class again
+                    String alias = this.readString();
+                    Map<String, Object> arguments = this.readEntries();
+                    arguments.put(ConfigurationSerialization.SERIALIZED_TYPE_KEY, alias);
+                    return ConfigurationSerialization.deserializeObject(arguments);
+                case TAG_OBJECT:
+                    byte[] objectBytes = new byte[VarInt.read(this.input)];
+                    this.input.readFully(objectBytes);
+                    try (BukkitObjectInputStream objectStream = new BukkitObjectInputStream(new ByteArrayInputStream(objectBytes))) {
+
+                        return objectStream.readObject();
+                    } catch (ClassNotFoundException ex) {
+
+                        throw new IOException(ex);
+                    }
+                default:
+                    throw new IOException("Unknown value tag " + tag);
+            }
+        }
+
+        /**
+         * reads the entries of a map in their original order
+         *
+         * @return
+         * @throws IOException
+         */
+        private Map<String, Object> readEntries() throws IOException {
+
+            int size = VarInt.read(this.input);
+            Map<String, Object> map = new LinkedHashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+
+                String key = this.readString();
+                map.put(key, this.readValue());
+            }
+
+            return map;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.modules.inventory;
+
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.util.VarInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * stores the changes of an inventory since its last full snapshot. the delta
+ * record contains a hash manifest of every slot and the content of all slots
+ * that have changed since the snapshot. a save only writes the delta record
+ * until it grows too large, then a new snapshot will be written.
+ *
+ * layout: magic (2 bytes), version, size, one hash per slot, changed slot
+ * count, then slot index, length and item for every changed slot. a length
+ * of 0 marks an empty slot.
+ *
+ * @author Wrath
+ */
+class InventoryDelta {
+
+    // the first bytes of every delta record
+    private static final byte MAGIC_FIRST = (byte) 0xB1;
+    private static final byte MAGIC_SECOND = (byte) 0x9F;
+
+    // the current version of the format
+    private static final int VERSION = 1;
+
+    // a new snapshot will be written if the changed items of the delta are
+    // larger than this share of the snapshot
+    private static final double COMPACTION_RATIO = 0.5;
+
+    // the content of an empty slot
+    private static final byte[] EMPTY_SLOT = new byte[0];
+
+    // the stored snapshot and delta record
+    public final byte[] snapshot;
+    public final byte[] delta;
+
+    private InventoryDelta(byte[] snapshot, byte[] delta) {
+
+        this.snapshot = snapshot;
+        this.delta = delta;
+    }
+
+    /**
+     * reads the contents from a snapshot and its delta record. a broken delta
+     * record will not be applied at all.
+     *
+     * @param snapshot
+     * @param delta
+     * @param fallbackInventory
+     * @return
+     */
+    public static ItemStack[] read(byte[] snapshot, byte[] delta, InventoryType fallbackInventory) {
+
+        ItemStack[] contents = InventorySerializer.deserialize(snapshot, fallbackInventory);
+
+        try {
+
+            Record record = Record.decode(delta);
+            if (record == null) {
+
+                return contents;
+            }
+
+            // decode every changed slot before the first one is replaced
+            ItemStack[] patched = Arrays.copyOf(contents, record.hashes.length);
+            for (Map.Entry<Integer, byte[]> slot : record.slots.entrySet()) {
+
+                patched[slot.getKey()] = slot.getValue().length == 0
+                        ? null
+                        : InventoryCodec.decodeItem(slot.getValue());
+            }
+
+            return patched;
+
+        } catch (Exception ex) {
+
+            // a broken delta leaves the snapshot as it is
+            Main.log.warning("Could not read the delta record of an inventory, the last snapshot will be used!");
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+
+        return contents;
+    }
+
+    /**
+     * compares the contents with the hash manifest of the stored delta record
+     * and creates the records to store. unchanged records are the same
+     * instances as the given ones.
+     *
+     * @param type
+     * @param contents
+     * @param snapshot
+     * @param delta
+     * @return
+     */
+    public static InventoryDelta write(InventoryType type, ItemStack[] contents, byte[] snapshot, byte[] delta) {
+
+        try {
+
+            // encode and hash every slot on its own
+            byte[][] slots = new byte[contents.length][];
+            long[] hashes = new long[contents.length];
+            for (int i = 0; i < contents.length; i++) {
+
+                slots[i] = contents[i] == null ? EMPTY_SLOT : InventoryCodec.encodeItem(contents[i]);
+                hashes[i] = InventoryDelta.hash(slots[i]);
+            }
+
+            // without a manifest every slot is unknown
+            Record previous = snapshot == null ? null : Record.decode(delta);
+            if (previous == null || previous.hashes.length != contents.length) {
+
+                return InventoryDelta.compact(type, contents, hashes);
+            }
+
+            // collect the slots that changed since the last save
+            Record record = new Record(hashes, new TreeMap<>(previous.slots));
+            boolean changed = false;
+            for (int i = 0; i < contents.length; i++) {
+
+                if (hashes[i] != previous.hashes[i]) {
+
+                    record.slots.put(i, slots[i]);
+                    changed = true;
+                }
+            }
+
+            if (!changed) {
+
+                return new InventoryDelta(snapshot, delta);
+            }
+
+            // a delta with too many changed items will be merged into a new
+            // snapshot
+            if (record.getChangedLength() > snapshot.length * COMPACTION_RATIO) {
+
+                return InventoryDelta.compact(type, contents, hashes);
+            }
+
+            return new InventoryDelta(snapshot, record.encode());
+
+        } catch (Exception ex) {
+
+            // write a full snapshot without a manifest
+            Main.log.warning("Could not write the delta record of an inventory, a full snapshot will be written!");
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            return new InventoryDelta(InventorySerializer.serialize(contents, type), null);
+        }
+    }
+
+    /**
+     * writes a full snapshot and an empty delta record with the manifest
+     *
+     * @param type
+     * @param contents
+     * @param hashes
+     * @return
+     * @throws IOException
+     */
+    private static InventoryDelta compact(InventoryType type, ItemStack[] contents, long[] hashes) throws IOException {
+
+        return new InventoryDelta(
+                InventorySerializer.serialize(contents, type),
+                new Record(hashes, new TreeMap<>()).encode()
+        );
+    }
+
+    /**
+     * a 64 bit fnv-1a hash of the encoded slot. empty slots hash to 0.
+     *
+     * @param slot
+     * @return
+     */
+    private static long hash(byte[] slot) {
+
+        if (slot.length == 0) {
+
+            return 0;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+        for (byte value : slot) {
+
+            hash ^= value & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * the decoded delta record
+     */
+    private static class Record {
+
+        // the hash of every slot
+        private final long[] hashes;
+
+        // the encoded items of the changed slots by slot index
+        private final TreeMap<Integer, byte[]> slots;
+
+        public Record(long[] hashes, TreeMap<Integer, byte[]> slots) {
+
+            this.hashes = hashes;
+            this.slots = slots;
+        }
+
+        /**
+         * get the size of all changed items
+         *
+         * @return
+         */
+        public int getChangedLength() {
+
+            int length = 0;
+            for (byte[] slot : this.slots.values()) {
+
+                length += slot.length;
+            }
+
+            return length;
+        }
+
+        /**
+         * encodes the record
+         *
+         * @return
+         * @throws IOException
+         */
+        public byte[] encode() throws IOException {
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(this.hashes.length * 8 + 16);
+            DataOutputStream output = new DataOutputStream(outputStream);
+
+            // the header and the manifest
+            output.writeByte(MAGIC_FIRST);
+            output.writeByte(MAGIC_SECOND);
+            output.writeByte(VERSION);
+            VarInt.write(output, this.hashes.length);
+            for (long hash : this.hashes) {
+
+                output.writeLong(hash);
+            }
+
+            // the changed slots
+            VarInt.write(output, this.slots.size());
+            for (Map.Entry<Integer, byte[]> slot : this.slots.entrySet()) {
+
+                VarInt.write(output, slot.getKey());
+                VarInt.write(output, slot.getValue().length);
+                output.write(slot.getValue());
+            }
+
+            output.flush();
+            return outputStream.toByteArray();
+        }
+
+        /**
+         * decodes a record. every length and slot index is checked against
+         * the size of the data and the manifest.
+         *
+         * @param data
+         * @return null if there is no record
+         * @throws IOException if the record is broken
+         */
+        public static Record decode(byte[] data) throws IOException {
+
+            if (data == null || data.length < 3 || data[0] != MAGIC_FIRST || data[1] != MAGIC_SECOND
+                    || data[2] != VERSION) {
+
+                return null;
+            }
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data, 3, data.length - 3));
+
+            // the manifest
+            long[] hashes = new long[Record.readLength(input, input.available() / 8)];
+            for (int i = 0; i < hashes.length; i++) {
+
+                hashes[i] = input.readLong();
+            }
+
+            // the changed slots
+            TreeMap<Integer, byte[]> slots = new TreeMap<>();
+            int changed = Record.readLength(input, hashes.length);
+            for (int i = 0; i < changed; i++) {
+
+                int slot = Record.readLength(input, hashes.length - 1);
+                byte[] item = new byte[Record.readLength(input, input.available())];
+                input.readFully(item);
+                slots.put(slot, item);
+            }
+
+            return new Record(hashes, slots);
+        }
+
+        /**
+         * reads a length or index that must not be larger than the given
+         * maximum
+         *
+         * @param input
+         * @param maximum
+         * @return
+         * @throws IOException
+         */
+        private static int readLength(DataInputStream input, int maximum) throws IOException {
+
+            int value = VarInt.read(input);
+            if (value < 0 || value > maximum) {
+
+                throw new IOException("Invalid value " + value + " in delta record, the maximum is " + maximum);
+            }
+
+            return value;
+        }
+    }
+}
@@ -16,24 +16,53 @@
  */
 package de.qhun.mc.playerdatasync.modules.inventory;
 
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.database.EntityLookup;
+import de.qhun.mc.playerdatasync.database.StoreResult;
 import de.qhun.mc.playerdatasync.modules.AbstractModule;
+import de.qhun.mc.playerdatasync.modules.PlayerDataModule;
+import de.qhun.mc.playerdatasync.modules.ServerClaim;
+import de.qhun.mc.playerdatasync.modules.SessionCache;
+import de.qhun.mc.playerdatasync.util.Autoload;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import org.bukkit.event.player.PlayerJoinEvent;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
 
 /**
  * the inventory module that stores multiple inventories in the database
  *
  * @author Wrath
  */
-public class InventoryModule extends AbstractModule<InventoryConfiguration> {
+public class InventoryModule extends AbstractModule<InventoryConfiguration> implements PlayerDataModule<PlayerInventory> {
 
     // the repository
     private PlayerInventoryRepository repository;
 
-    private UUID eventReferenceJoin;
+    // the inventories of the online players
+    private final SessionCache<PlayerInventory> sessionCache = new SessionCache<>();
+
+    // encodes and decodes the inventories, one thread per core
+    private ExecutorService codecPool;
+
+    // the running saves of every player, saves of one player run in order
+    private final Map<UUID, CompletableFuture<Void>> pendingSaves = new ConcurrentHashMap<>();
+
+    // joining players whose loaded inventory has not been applied yet
+    private final Set<UUID> loadingPlayers = ConcurrentHashMap.newKeySet();
+
+    @Autoload
+    private ServerClaim serverClaim;
+
     private UUID eventReferenceQuit;
 
     @Override
@@ -51,8 +80,16 @@ public class InventoryModule extends AbstractModule<InventoryConfiguration> {
     @Override
     public boolean enable() {
 
-        // add player join event
-        this.eventReferenceJoin = this.eventRegister.addEvent(PlayerJoinEvent.class, this::onPlayerJoin);
+        // start the codec workers
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.codecPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+
+            Thread thread = new Thread(runnable, "QhunPlayerDataSync-inventory-codec-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // add player quit event, the join is handled by the module composer
         this.eventReferenceQuit = this.eventRegister.addEvent(PlayerQuitEvent.class, this::onPlayerQuit);
 
         return true;
@@ -65,22 +102,31 @@ public class InventoryModule extends AbstractModule<InventoryConfiguration> {
         this.logInfoPrefixed("Module is disableing. Saving all inventory data for the online players.");
 
         // removes the events from the event register
-        this.eventRegister.removeEvent(PlayerJoinEvent.class, this.eventReferenceJoin);
         this.eventRegister.removeEvent(PlayerQuitEvent.class, this.eventReferenceQuit);
 
-        // save the inventory for all online players
-        this.plugin.getServer().getOnlinePlayers().forEach(this::savePlayerInventory);
+        // save the inventory for all online players. the contents are copied
+        // here, the encoding runs on all cores
+        this.plugin.getServer().getOnlinePlayers().forEach(player -> this.savePlayerInventory(player, true));
+
+        // wait for every save, including the ones of players that just left
+        CompletableFuture.allOf(this.pendingSaves.values().toArray(new CompletableFuture<?>[0]))
+                .exceptionally(ex -> null)
+                .join();
+
+        this.codecPool.shutdown();
+        this.sessionCache.clear();
 
         // done
         return true;
     }
 
     /**
-     * fires if a player is joining
+     * prepares a joining player
      *
-     * @param event
+     * @param player
      */
-    private void onPlayerJoin(PlayerJoinEvent event) {
+    @Override
+    public void preparePlayer(Player player) {
 
         // first clear everything in the players inventory!
         // evil! isn't it?
@@ -88,34 +134,151 @@ public class InventoryModule extends AbstractModule<InventoryConfiguration> {
         // he/she does not own in the server network. this will
         // meight be visible when the server is laggy and there are not
         // many ticks per second
-        Player player = event.getPlayer();
         player.getInventory().clear();
 
-        // now queue a task to get the current inventory from the database
-        this.createAsyncTask(() -> {
+        // the cleared inventory must not be saved until the loaded one has
+        // been applied
+        this.loadingPlayers.add(player.getUniqueId());
+    }
+
+    /**
+     * get the inventory of the player on this branch
+     *
+     * @param uuid
+     * @return
+     */
+    @Override
+    public EntityLookup<PlayerInventory, ?> getPlayerDataLookup(UUID uuid) {
+
+        // branch name and uuid are the keys! in that order!
+        return new EntityLookup<>(this.repository, Arrays.asList(uuid, this.configuration.getBranchName()));
+    }
 
-            // get every inventory for the player by searching by uuid
-            UUID playerUuid = event.getPlayer().getUniqueId();
-            PlayerInventory inventory = this.repository.findByPrimary(
-                    // branch name and uuid are the keys! in that order!
-                    Arrays.asList(playerUuid, this.configuration.getBranchName())
-            );
+    /**
+     * get the running saves of the player
+     *
+     * @param uuid
+     * @return
+     */
+    @Override
+    public CompletableFuture<Void> getPendingSave(UUID uuid) {
 
-            // check if the player is allready in the database
-            if (inventory != null) {
+        return this.pendingSaves.getOrDefault(uuid, CompletableFuture.completedFuture(null));
+    }
 
-                // now replace every inventory
-                player.getInventory().setContents(inventory.getInventory().getContents());
+    /**
+     * applies the loaded inventory of a joining player
+     *
+     * @param player
+     * @param inventory
+     */
+    @Override
+    public void applyPlayerData(Player player, PlayerInventory inventory) {
 
-                // replace ender chest
-                if (this.configuration.isEnderChestEnabled()) {
+        // remember the inventory for the quit
+        UUID playerUuid = player.getUniqueId();
+        PlayerInventory session = inventory != null
+                ? inventory
+                : new PlayerInventory(playerUuid, this.configuration.getBranchName());
+        this.sessionCache.put(playerUuid, this.configuration.getBranchName(), session);
 
-                    player.getEnderChest().setContents(inventory.getEnderChest().getContents());
-                }
+        // other servers wait for the save on quit from now on
+        this.runAfterPendingSaves(playerUuid, () -> this.storeClaim(session, true));
+
+        // check if the player is allready in the database
+        if (inventory != null) {
+
+            this.applyContents(player, inventory);
+        } else {
+
+            this.loadingPlayers.remove(playerUuid);
+        }
+    }
+
+    /**
+     * decodes the stored contents on the codec workers and sets them on the
+     * main thread. the player will not be saved until then.
+     *
+     * @param player
+     * @param inventory
+     */
+    private void applyContents(Player player, PlayerInventory inventory) {
+
+        UUID playerUuid = player.getUniqueId();
+        boolean enderChestEnabled = this.configuration.isEnderChestEnabled();
+
+        CompletableFuture.supplyAsync(() -> {
+
+            synchronized (inventory) {
+
+                return new ItemStack[][]{
+                    inventory.getInventory(),
+                    enderChestEnabled ? inventory.getEnderChest() : null
+                };
+            }
+        }, this.codecPool).whenComplete((contents, ex) -> this.createSyncTask(() -> {
+
+            this.loadingPlayers.remove(playerUuid);
+
+            if (ex != null) {
+
+                Main.log.log(Level.WARNING, ex.getMessage(), ex);
+                return;
+            }
+
+            // the player left while decoding
+            if (!player.isOnline()) {
+                return;
+            }
+
+            // now replace every inventory
+            player.getInventory().setContents(contents[0]);
+
+            // replace ender chest
+            if (contents[1] != null) {
+
+                player.getEnderChest().setContents(contents[1]);
             }
+        }));
+    }
+
+    /**
+     * loads an inventory that has been saved by another server in the
+     * meantime again and applies it to the player if the player is still
+     * online here. the contents of this server are not written.
+     *
+     * @param inventory
+     * @param release the player has left this server
+     */
+    private void reloadInventory(PlayerInventory inventory, boolean release) {
+
+        UUID playerUuid = inventory.getUuid();
+        Main.log.warning("The inventory of player " + playerUuid + " has been saved by another server in the meantime. The stored inventory will be loaded again.");
+
+        // read the stored version and records
+        if (!this.repository.refresh(inventory)) {
+
+            Main.log.warning("Could not load the inventory of player " + playerUuid + " again.");
+            return;
+        }
 
-            // wait 10 ticks -> 500 ms
-        }, 10L);
+        if (release) {
+            return;
+        }
+
+        // the player must not be saved until the stored contents are set
+        this.loadingPlayers.add(playerUuid);
+        this.createSyncTask(() -> {
+
+            Player player = this.plugin.getServer().getPlayer(playerUuid);
+            if (player == null) {
+
+                this.loadingPlayers.remove(playerUuid);
+                return;
+            }
+
+            this.applyContents(player, inventory);
+        });
     }
 
     /**
@@ -125,43 +288,217 @@ public class InventoryModule extends AbstractModule<InventoryConfiguration> {
      */
     private void onPlayerQuit(PlayerQuitEvent event) {
 
-        this.savePlayerInventory(event.getPlayer());
+        this.savePlayerInventory(event.getPlayer(), true);
+
+        // the inventory has been saved, forget it
+        this.sessionCache.evict(event.getPlayer().getUniqueId(), this.configuration.getBranchName());
+        this.loadingPlayers.remove(event.getPlayer().getUniqueId());
     }
 
     /**
-     * saves the inventory
+     * saves the inventory of an online player during the autosave
      *
      * @param player
      */
-    private void savePlayerInventory(Player player) {
+    @Override
+    public void savePlayerData(Player player) {
+
+        // the loaded inventory has not been applied yet
+        if (this.sessionCache.get(player.getUniqueId(), this.configuration.getBranchName()) == null) {
+            return;
+        }
+
+        this.savePlayerInventory(player, false);
+    }
+
+    /**
+     * saves the inventory. the contents are copied on the calling thread,
+     * encoding and storing run on the codec workers.
+     *
+     * @param player
+     * @param release release the claim of this server, eg. on quit
+     * @return
+     */
+    private CompletableFuture<Void> savePlayerInventory(Player player, boolean release) {
 
-        // store all inventories
-        // get player from db
         UUID playerUuid = player.getUniqueId();
-        PlayerInventory inventory = this.repository.findByPrimary(
-                Arrays.asList(playerUuid, this.configuration.getBranchName())
+
+        // the loaded inventory has not been applied yet, the stored one is
+        // still up to date
+        if (this.loadingPlayers.contains(playerUuid)) {
+
+            // a claim that has been stored allready must be released
+            PlayerInventory session = this.sessionCache.get(playerUuid, this.configuration.getBranchName());
+            if (release && session != null) {
+
+                return this.runAfterPendingSaves(playerUuid, () -> this.storeClaim(session, false));
+            }
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // only copy the contents here, the items will change on the main thread
+        ItemStack[] inventoryContents = InventoryModule.copyContents(player.getInventory().getContents());
+        ItemStack[] enderChestContents = this.configuration.isEnderChestEnabled()
+                ? InventoryModule.copyContents(player.getEnderChest().getContents())
+                : null;
+        PlayerInventory session = this.sessionCache.get(playerUuid, this.configuration.getBranchName());
+
+        return this.runAfterPendingSaves(
+                playerUuid,
+                () -> this.storePlayerInventory(playerUuid, session, inventoryContents, enderChestContents, release)
         );
+    }
+
+    /**
+     * runs the save on the codec workers after the previous saves of this
+     * player
+     *
+     * @param playerUuid
+     * @param runnable
+     * @return
+     */
+    private CompletableFuture<Void> runAfterPendingSaves(UUID playerUuid, Runnable runnable) {
+
+        CompletableFuture<Void> save = this.pendingSaves.compute(playerUuid, (uuid, previous) -> (previous != null
+                ? previous.exceptionally(ex -> null)
+                : CompletableFuture.<Void>completedFuture(null)
+        ).thenRunAsync(runnable, this.codecPool));
+
+        // forget the save when it is done
+        save.whenComplete((result, ex) -> this.pendingSaves.remove(playerUuid, save));
 
-        // check if a player instance exists
-        if (inventory == null) {
+        return save;
+    }
+
+    /**
+     * stores the claim of this server without the contents. an inventory that
+     * is not stored yet will be inserted. a claim this server holds allready
+     * will not be written again.
+     *
+     * @param inventory
+     * @param claimed false to release the claim
+     */
+    private void storeClaim(PlayerInventory inventory, boolean claimed) {
 
-            inventory = new PlayerInventory(
-                    player.getUniqueId(),
-                    this.configuration.getBranchName()
-            );
+        synchronized (inventory) {
+
+            this.setClaim(inventory, claimed);
+            StoreResult result = this.repository.store(inventory);
+
+            // eg. claimed by a server that did not release it in time
+            if (result == StoreResult.CONFLICT && this.repository.refresh(inventory)) {
+
+                this.setClaim(inventory, claimed);
+                result = this.repository.store(inventory);
+            }
+
+            if (result != StoreResult.STORED) {
+
+                Main.log.warning("Could not store the claim of the inventory of player " + inventory.getUuid());
+            }
         }
+    }
 
-        // save inventory
-        inventory.setInventory(player.getInventory());
+    /**
+     * claims or releases the inventory
+     *
+     * @param inventory
+     * @param claimed
+     */
+    private void setClaim(PlayerInventory inventory, boolean claimed) {
+
+        if (claimed) {
+
+            this.serverClaim.claim(inventory);
+        } else {
+
+            this.serverClaim.release(inventory);
+        }
+    }
+
+    /**
+     * encodes and stores the copied contents
+     *
+     * @param playerUuid
+     * @param session the inventory of the session or null
+     * @param inventoryContents
+     * @param enderChestContents null if the ender chest is not synced
+     * @param release release the claim of this server
+     */
+    private void storePlayerInventory(UUID playerUuid, PlayerInventory session, ItemStack[] inventoryContents, ItemStack[] enderChestContents, boolean release) {
+
+        try {
+
+            // get the inventory from the session or from db if the player data
+            // has not been loaded
+            PlayerInventory inventory = session;
+            if (inventory == null) {
+
+                inventory = this.repository.findByPrimary(
+                        Arrays.asList(playerUuid, this.configuration.getBranchName())
+                );
+            }
+
+            // check if a player instance exists
+            if (inventory == null) {
+
+                inventory = new PlayerInventory(
+                        playerUuid,
+                        this.configuration.getBranchName()
+                );
+            }
+
+            synchronized (inventory) {
+
+                // other servers wait for the release
+                this.setClaim(inventory, !release);
+
+                // save inventory
+                inventory.setInventory(inventoryContents);
+
+                // ender chest
+                if (enderChestContents != null) {
+
+                    inventory.setEnderChest(enderChestContents);
+                }
+
+                // only the changed records will be written. the inventory of
+                // another server is never overwritten
+                StoreResult result = this.repository.store(inventory);
+                if (result == StoreResult.CONFLICT) {
+
+                    this.reloadInventory(inventory, release);
+                } else if (result == StoreResult.FAILED) {
+
+                    // the records are still marked as changed and will be
+                    // written together with the next save
+                    Main.log.warning("Could not save the inventory of player " + playerUuid + ". Retrying with the next save.");
+                }
+            }
+
+        } catch (Exception ex) {
+
+            Main.log.warning("Could not save the inventory of player " + playerUuid);
+            Main.log.log(Level.WARNING, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * copies every item of the given contents
+     *
+     * @param contents
+     * @return
+     */
+    private static ItemStack[] copyContents(ItemStack[] contents) {
 
-        // ender chest
-        if (this.configuration.isEnderChestEnabled()) {
+        ItemStack[] copy = new ItemStack[contents.length];
+        for (int i = 0; i < contents.length; i++) {
 
-            inventory.setEnderChest(player.getEnderChest());
+            copy[i] = contents[i] != null ? contents[i].clone() : null;
         }
 
-        // store the dataset
-        this.repository.store(inventory);
+        return copy;
     }
 
 }
@@ -17,9 +17,8 @@
 package de.qhun.mc.playerdatasync.modules.inventory;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import org.bukkit.inventory.Inventory;
-import org.bukkit.util.io.BukkitObjectOutputStream;
 import org.bukkit.util.io.BukkitObjectInputStream;
 import org.bukkit.Bukkit;
 import org.apache.commons.codec.binary.Base64;
@@ -28,49 +27,35 @@ import org.bukkit.inventory.ItemStack;
 
 /**
  * a class that is capable of serializing a players inventory or a chest content
- * into a base64 string.
+ * into the compact binary format of the inventory codec. rows that have been
+ * written as base64 strings by older versions can still be read and will be
+ * stored in the binary format on the next save.
  *
- * idea from: https://gist.github.com/graywolf336/8153678
+ * legacy format idea from: https://gist.github.com/graywolf336/8153678
  *
  * @author Wrath
  */
 public class InventorySerializer {
 
     /**
-     * serializes the given inventory into a base64 string
+     * serializes the given inventory contents
      *
-     * @param inventory
-     * @param fallbackInventory
+     * @param contents
+     * @param type
      * @return
      */
-    public static String serialize(Inventory inventory, InventoryType fallbackInventory) {
+    public static byte[] serialize(ItemStack[] contents, InventoryType type) {
 
         try {
-            // prepare serialisation
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            BukkitObjectOutputStream objectStream = new BukkitObjectOutputStream(outputStream);
-
-            // Write the size inventory type
-            objectStream.writeObject(inventory.getType());
-
-            // every item should be put into the output stream
-            for (int i = 0; i < inventory.getSize(); i++) {
 
-                // add this item
-                objectStream.writeObject(inventory.getItem(i));
-            }
-
-            // close the stream and convert to base64
-            objectStream.close();
-            return Base64.encodeBase64String(outputStream.toByteArray());
+            return InventoryCodec.encode(type, contents);
 
         } catch (Exception ex) {
 
             // serialize an empty inventory
             try {
 
-                return InventorySerializer
-                        .serialize(Bukkit.getServer().createInventory(null, fallbackInventory), fallbackInventory);
+                return InventoryCodec.encode(type, new ItemStack[type.getDefaultSize()]);
             } catch (Exception exx) {
 
                 // ok ... this is wired... throw an error
@@ -80,40 +65,62 @@ public class InventorySerializer {
     }
 
     /**
-     * deserialize an inventory from a base64 string
+     * deserialize inventory contents. the format is detected automatically.
      *
-     * @param base64SerializedInventory
+     * @param serializedInventory
      * @param fallbackInventory
      * @return
      */
-    public static Inventory deserialize(String base64SerializedInventory, InventoryType fallbackInventory) {
+    public static ItemStack[] deserialize(byte[] serializedInventory, InventoryType fallbackInventory) {
 
         try {
-            // create a byte array input stream with the deserialised content
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(Base64.decodeBase64(base64SerializedInventory));
-            BukkitObjectInputStream objectStream = new BukkitObjectInputStream(inputStream);
 
-            // read the inventory type from the stream
-            InventoryType type = (InventoryType) objectStream.readObject();
+            // the current binary format
+            if (InventoryCodec.isEncoded(serializedInventory)) {
 
-            // create a bukkit input stream and an empty inventory to store the items in
-            Inventory inventory = Bukkit.getServer().createInventory(null, type);
-
-            // iterate over every items in the stream
-            for (int i = 0; i < inventory.getSize(); i++) {
-
-                // set the item
-                inventory.setItem(i, (ItemStack) objectStream.readObject());
+                return InventoryCodec.decode(serializedInventory);
             }
 
-            // close the stream and return the crafted inventory
-            objectStream.close();
-            return inventory;
+            // a base64 string of an older version
+            return InventorySerializer.deserializeLegacy(
+                    new String(serializedInventory, StandardCharsets.US_ASCII)
+            );
 
         } catch (Exception ex) {
 
             // data is corrupt... return an empty inventory
-            return Bukkit.getServer().createInventory(null, fallbackInventory);
+            return new ItemStack[fallbackInventory.getDefaultSize()];
+        }
+    }
+
+    /**
+     * deserialize an inventory from a base64 string of the legacy format
+     *
+     * @param base64SerializedInventory
+     * @return
+     * @throws Exception
+     */
+    private static ItemStack[] deserializeLegacy(String base64SerializedInventory) throws Exception {
+
+        // create a byte array input stream with the deserialised content
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(Base64.decodeBase64(base64SerializedInventory));
+        BukkitObjectInputStream objectStream = new BukkitObjectInputStream(inputStream);
+
+        // read the inventory type from the stream
+        InventoryType type = (InventoryType) objectStream.readObject();
+
+        // create a bukkit input stream and an empty inventory to store the items in
+        Inventory inventory = Bukkit.getServer().createInventory(null, type);
+
+        // iterate over every items in the stream
+        for (int i = 0; i < inventory.getSize(); i++) {
+
+            // set the item
+            inventory.setItem(i, (ItemStack) objectStream.readObject());
         }
+
+        // close the stream and return the contents
+        objectStream.close();
+        return inventory.getContents();
     }
 }
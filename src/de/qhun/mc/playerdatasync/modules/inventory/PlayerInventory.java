@@ -18,13 +18,16 @@ package de.qhun.mc.playerdatasync.modules.inventory;
 
 import de.qhun.mc.playerdatasync.database.decorators.Column;
 import de.qhun.mc.playerdatasync.database.decorators.ColumnType;
+import de.qhun.mc.playerdatasync.database.decorators.Compressed;
 import de.qhun.mc.playerdatasync.database.decorators.Entity;
 import de.qhun.mc.playerdatasync.database.decorators.NotNull;
 import de.qhun.mc.playerdatasync.database.decorators.Primary;
 import de.qhun.mc.playerdatasync.database.decorators.Table;
+import de.qhun.mc.playerdatasync.database.decorators.Version;
+import de.qhun.mc.playerdatasync.modules.ClaimedEntity;
 import java.util.UUID;
 import org.bukkit.event.inventory.InventoryType;
-import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
 
 /**
  * the player's normal inventory
@@ -33,7 +36,7 @@ import org.bukkit.inventory.Inventory;
  */
 @Entity
 @Table
-public class PlayerInventory {
+public class PlayerInventory implements ClaimedEntity {
 
     @Primary(index = 0)
     @Column(size = 36)
@@ -45,11 +48,34 @@ public class PlayerInventory {
     @NotNull
     private String branch;
 
-    @Column(type = ColumnType.Text)
-    private String inventory;
+    @Column(type = ColumnType.Object)
+    @Compressed
+    private byte[] inventory;
 
-    @Column(type = ColumnType.Text)
-    private String enderChest;
+    @Column(type = ColumnType.Object)
+    private byte[] inventoryDelta;
+
+    @Column(type = ColumnType.Object)
+    @Compressed
+    private byte[] enderChest;
+
+    @Column(type = ColumnType.Object)
+    private byte[] enderChestDelta;
+
+    @Column(type = ColumnType.Long)
+    @Version
+    @NotNull
+    private long version;
+
+    // the server the player is online on, null if the player has been saved
+    // on quit
+    @Column(size = 36)
+    private String claimedBy;
+
+    // the claim expires at this time in milliseconds
+    @Column(type = ColumnType.Long)
+    @NotNull
+    private long claimedUntil;
 
     protected PlayerInventory() {
     }
@@ -71,23 +97,68 @@ public class PlayerInventory {
     }
 
     /**
-     * get players normal inventory
+     * get the contents of the players normal inventory
      *
      * @return
      */
-    public Inventory getInventory() {
+    public ItemStack[] getInventory() {
 
-        return InventorySerializer.deserialize(this.inventory, InventoryType.PLAYER);
+        return InventoryDelta.read(this.inventory, this.inventoryDelta, InventoryType.PLAYER);
     }
 
     /**
-     * get players ender chest
+     * get the contents of the players ender chest
      *
      * @return
      */
-    public Inventory getEnderChest() {
+    public ItemStack[] getEnderChest() {
 
-        return InventorySerializer.deserialize(this.enderChest, InventoryType.ENDER_CHEST);
+        return InventoryDelta.read(this.enderChest, this.enderChestDelta, InventoryType.ENDER_CHEST);
+    }
+
+    /**
+     * get the version of the stored row
+     *
+     * @return
+     */
+    public long getVersion() {
+
+        return this.version;
+    }
+
+    /**
+     * get the id of the server that claims the entity
+     *
+     * @return
+     */
+    @Override
+    public String getClaimedBy() {
+
+        return this.claimedBy;
+    }
+
+    /**
+     * get the time in milliseconds the claim expires at
+     *
+     * @return
+     */
+    @Override
+    public long getClaimedUntil() {
+
+        return this.claimedUntil;
+    }
+
+    /**
+     * claims or releases the entity
+     *
+     * @param claimedBy
+     * @param claimedUntil
+     */
+    @Override
+    public void setClaim(String claimedBy, long claimedUntil) {
+
+        this.claimedBy = claimedBy;
+        this.claimedUntil = claimedUntil;
     }
 
     /**
@@ -101,22 +172,34 @@ public class PlayerInventory {
     }
 
     /**
-     * set the normal inventory for the player
+     * set the normal inventory contents for the player
      *
      * @param inventory
      */
-    public void setInventory(Inventory inventory) {
+    public void setInventory(ItemStack[] inventory) {
 
-        this.inventory = InventorySerializer.serialize(inventory, InventoryType.PLAYER);
+        InventoryDelta result = InventoryDelta.write(
+                InventoryType.PLAYER, inventory, this.inventory, this.inventoryDelta
+        );
+
+        // unchanged records keep their instance and will not be written
+        this.inventory = result.snapshot;
+        this.inventoryDelta = result.delta;
     }
 
     /**
-     * set the ender chest for the player
+     * set the ender chest contents for the player
      *
      * @param enderChest
      */
-    public void setEnderChest(Inventory enderChest) {
+    public void setEnderChest(ItemStack[] enderChest) {
+
+        InventoryDelta result = InventoryDelta.write(
+                InventoryType.ENDER_CHEST, enderChest, this.enderChest, this.enderChestDelta
+        );
 
-        this.enderChest = InventorySerializer.serialize(enderChest, InventoryType.ENDER_CHEST);
+        // unchanged records keep their instance and will not be written
+        this.enderChest = result.snapshot;
+        this.enderChestDelta = result.delta;
     }
 }
@@ -16,13 +16,26 @@
  */
 package de.qhun.mc.playerdatasync.modules.metadata;
 
+import de.qhun.mc.playerdatasync.Main;
+import de.qhun.mc.playerdatasync.database.EntityLookup;
+import de.qhun.mc.playerdatasync.database.StoreResult;
 import de.qhun.mc.playerdatasync.modules.AbstractModule;
+import de.qhun.mc.playerdatasync.modules.PlayerDataModule;
+import de.qhun.mc.playerdatasync.modules.ServerClaim;
+import de.qhun.mc.playerdatasync.modules.SessionCache;
+import de.qhun.mc.playerdatasync.util.Autoload;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
 import org.bukkit.entity.Player;
-import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.potion.PotionEffect;
 
@@ -32,12 +45,26 @@ import org.bukkit.potion.PotionEffect;
  *
  * @author Wrath
  */
-public class MetadataModule extends AbstractModule<MetadataConfiguration> {
+public class MetadataModule extends AbstractModule<MetadataConfiguration> implements PlayerDataModule<PlayerMetadata> {
 
     // the repository
     private PlayerMetadataRepository repository;
-    
-    private UUID eventReferenceJoin;
+
+    // the metadata of the online players
+    private final SessionCache<PlayerMetadata> sessionCache = new SessionCache<>();
+
+    // joining players whose loaded metadata has not been applied yet
+    private final Set<UUID> loadingPlayers = ConcurrentHashMap.newKeySet();
+
+    @Autoload
+    private ServerClaim serverClaim;
+
+    // stores the metadata off the main thread
+    private ExecutorService saveExecutor;
+
+    // the running saves of every player, saves of one player run in order
+    private final Map<UUID, CompletableFuture<Void>> pendingSaves = new ConcurrentHashMap<>();
+
     private UUID eventReferenceQuit;
     
     @Override
@@ -55,8 +82,16 @@ public class MetadataModule extends AbstractModule<MetadataConfiguration> {
     @Override
     public boolean enable() {
 
-        // add player join event
-        this.eventReferenceJoin = this.eventRegister.addEvent(PlayerJoinEvent.class, this::onPlayerJoin);
+        // the saves do not need the bukkit scheduler, so they can be awaited
+        // while disabling
+        this.saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, "QhunPlayerDataSync-metadata-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // add player quit event, the join is handled by the module composer
         this.eventReferenceQuit = this.eventRegister.addEvent(PlayerQuitEvent.class, this::onPlayerQuit);
         
         return true;
@@ -69,85 +104,146 @@ public class MetadataModule extends AbstractModule<MetadataConfiguration> {
         this.logInfoPrefixed("Module is disableing. Saving all metadata for the online players.");
 
         // removes the events from the event register
-        this.eventRegister.removeEvent(PlayerJoinEvent.class, this.eventReferenceJoin);
         this.eventRegister.removeEvent(PlayerQuitEvent.class, this.eventReferenceQuit);
 
         // save the metadata for all online players
-        this.plugin.getServer().getOnlinePlayers().forEach(this::savePlayerMetadata);
+        this.plugin.getServer().getOnlinePlayers().forEach(player -> this.savePlayerMetadata(player, true));
+
+        // wait for every save, including the ones of players that just left
+        CompletableFuture.allOf(this.pendingSaves.values().toArray(new CompletableFuture<?>[0]))
+                .exceptionally(ex -> null)
+                .join();
+
+        this.saveExecutor.shutdown();
+        this.loadingPlayers.clear();
+        this.sessionCache.clear();
         
         return true;
     }
 
     /**
-     * fires if a player is joining
+     * get the metadata of the player on this branch
      *
-     * @param event
+     * @param uuid
+     * @return
      */
-    private void onPlayerJoin(PlayerJoinEvent event) {
-        
-        Player player = event.getPlayer();
+    @Override
+    public EntityLookup<PlayerMetadata, ?> getPlayerDataLookup(UUID uuid) {
+
+        return new EntityLookup<>(this.repository, Arrays.asList(uuid, this.configuration.getBranchName()));
+    }
+
+    /**
+     * get the running saves of the player
+     *
+     * @param uuid
+     * @return
+     */
+    @Override
+    public CompletableFuture<Void> getPendingSave(UUID uuid) {
+
+        return this.pendingSaves.getOrDefault(uuid, CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * prepares a joining player
+     *
+     * @param player
+     */
+    @Override
+    public void preparePlayer(Player player) {
+
+        // the metadata must not be saved until the loaded one has been
+        // applied
+        this.loadingPlayers.add(player.getUniqueId());
+    }
+
+    /**
+     * applies the loaded metadata of a joining player
+     *
+     * @param player
+     * @param playerMetadata
+     */
+    @Override
+    public void applyPlayerData(Player player, PlayerMetadata playerMetadata) {
+
+        UUID playerUuid = player.getUniqueId();
+
+        // remember the metadata for the quit
+        PlayerMetadata session = playerMetadata != null
+                ? playerMetadata
+                : new PlayerMetadata(playerUuid, this.configuration.getBranchName());
+        this.sessionCache.put(playerUuid, this.configuration.getBranchName(), session);
+        this.loadingPlayers.remove(playerUuid);
 
-        // get player domain model
-        UUID playerUuid = event.getPlayer().getUniqueId();
-        PlayerMetadata playerMetadata = this.repository.findByPrimary(
-                Arrays.asList(playerUuid, this.configuration.getBranchName())
-        );
+        // other servers wait for the save on quit from now on
+        this.runAfterPendingSaves(playerUuid, () -> this.storeClaim(session));
 
         // if a player model is available, load these data
         if (playerMetadata != null) {
 
-            // set all data from the database to the bukkit api
-            if (this.configuration.isHealthEnabled()) {
-                
-                player.setHealthScale(playerMetadata.getHealthScale());
-                player.setHealth(playerMetadata.getHealth());
-            }
+            this.setPlayerMetadata(player, playerMetadata);
+        }
+    }
+
+    /**
+     * sets the stored metadata to the player
+     *
+     * @param player
+     * @param playerMetadata
+     */
+    private void setPlayerMetadata(Player player, PlayerMetadata playerMetadata) {
+
+        // set all data from the database to the bukkit api
+        if (this.configuration.isHealthEnabled()) {
             
-            if (this.configuration.isXpEnabled()) {
-                
-                player.setLevel(playerMetadata.getLevel());
-                player.setExp(playerMetadata.getXp());
-            }
+            player.setHealthScale(playerMetadata.getHealthScale());
+            player.setHealth(playerMetadata.getHealth());
+        }
+        
+        if (this.configuration.isXpEnabled()) {
             
-            if (this.configuration.isFoodEnabled()) {
-                
-                player.setFoodLevel(playerMetadata.getFood());
-                player.setSaturation(playerMetadata.getSaturation());
-                player.setExhaustion(playerMetadata.getExhaustion());
-            }
+            player.setLevel(playerMetadata.getLevel());
+            player.setExp(playerMetadata.getXp());
+        }
+        
+        if (this.configuration.isFoodEnabled()) {
             
-            if (this.configuration.isGamemodeEnabled()) {
-                
-                player.setGameMode(playerMetadata.getGamemode());
-            }
+            player.setFoodLevel(playerMetadata.getFood());
+            player.setSaturation(playerMetadata.getSaturation());
+            player.setExhaustion(playerMetadata.getExhaustion());
+        }
+        
+        if (this.configuration.isGamemodeEnabled()) {
             
-            if (this.configuration.isFlightEnabled()) {
-                
-                player.setAllowFlight(playerMetadata.isFlight());
-            }
+            player.setGameMode(playerMetadata.getGamemode());
+        }
+        
+        if (this.configuration.isFlightEnabled()) {
             
-            if (this.configuration.isPotionEffectEnabled()) {
+            player.setAllowFlight(playerMetadata.isFlight());
+        }
+        
+        if (this.configuration.isPotionEffectEnabled()) {
 
-                // remove all effects first
-                player.getActivePotionEffects().forEach(e -> player.removePotionEffect(e.getType()));
-                player.addPotionEffects((Collection<PotionEffect>) playerMetadata.getPotionEffects());
-            }
-            
-            if (this.configuration.isFireEnabled()) {
-                
-                player.setFireTicks(playerMetadata.getFireTicks());
-            }
+            // remove all effects first
+            player.getActivePotionEffects().forEach(e -> player.removePotionEffect(e.getType()));
+            player.addPotionEffects((Collection<PotionEffect>) playerMetadata.getPotionEffects());
+        }
+        
+        if (this.configuration.isFireEnabled()) {
             
-            if (this.configuration.isAirEnabled()) {
-                
-                player.setRemainingAir(playerMetadata.getAir());
-            }
+            player.setFireTicks(playerMetadata.getFireTicks());
+        }
+        
+        if (this.configuration.isAirEnabled()) {
             
-            if (this.configuration.isCurrentHoldItemEnabled()) {
-                
-                player.getInventory().setHeldItemSlot(playerMetadata.getHoldItemSlot());
-            }
+            player.setRemainingAir(playerMetadata.getAir());
+        }
+        
+        if (this.configuration.isCurrentHoldItemEnabled()) {
             
+            player.getInventory().setHeldItemSlot(playerMetadata.getHoldItemSlot());
         }
     }
 
@@ -157,31 +253,112 @@ public class MetadataModule extends AbstractModule<MetadataConfiguration> {
      * @param event
      */
     private void onPlayerQuit(PlayerQuitEvent event) {
-        
-        this.savePlayerMetadata(event.getPlayer());
+
+        this.savePlayerMetadata(event.getPlayer(), true);
+
+        // the metadata has been saved, forget it
+        this.sessionCache.evict(event.getPlayer().getUniqueId(), this.configuration.getBranchName());
+        this.loadingPlayers.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * saves the metadata of an online player during the autosave
+     *
+     * @param player
+     */
+    @Override
+    public void savePlayerData(Player player) {
+
+        // the loaded metadata has not been applied yet
+        if (this.sessionCache.get(player.getUniqueId(), this.configuration.getBranchName()) == null) {
+            return;
+        }
+
+        this.savePlayerMetadata(player, false);
     }
 
     /**
-     * saves the metadata
+     * saves the metadata. the state is read on the calling thread, storing
+     * runs on the save executor.
      *
      * @param player
+     * @param release release the claim of this server, eg. on quit
+     * @return
      */
-    private void savePlayerMetadata(Player player) {
+    private CompletableFuture<Void> savePlayerMetadata(Player player, boolean release) {
 
-        // get player from db
+        // the loaded metadata has not been applied yet, the stored one is
+        // still up to date
         UUID playerUuid = player.getUniqueId();
-        PlayerMetadata playerMetadata = this.repository.findByPrimary(
-                Arrays.asList(playerUuid, this.configuration.getBranchName())
-        );
+        if (this.loadingPlayers.contains(playerUuid)) {
 
-        // check if a player instance exists
-        if (playerMetadata == null) {
-            
-            playerMetadata = new PlayerMetadata(
-                    player.getUniqueId(), this.configuration.getBranchName()
-            );
+            return CompletableFuture.completedFuture(null);
         }
 
+        // the state is read here, the model is changed while storing
+        PlayerMetadata state = this.readPlayerMetadata(player);
+        PlayerMetadata session = this.sessionCache.get(playerUuid, this.configuration.getBranchName());
+
+        return this.runAfterPendingSaves(playerUuid, () -> {
+
+            try {
+
+                // get the metadata from the session or from db if the player
+                // data has not been loaded
+                PlayerMetadata playerMetadata = session;
+                if (playerMetadata == null) {
+
+                    playerMetadata = this.repository.findByPrimary(
+                            Arrays.asList(playerUuid, this.configuration.getBranchName())
+                    );
+                }
+
+                // check if a player instance exists
+                if (playerMetadata == null) {
+
+                    playerMetadata = new PlayerMetadata(playerUuid, this.configuration.getBranchName());
+                }
+
+                this.storePlayerMetadata(playerMetadata, state, release);
+            } catch (Exception ex) {
+
+                Main.log.warning("Could not save the metadata of player " + playerUuid);
+                Main.log.log(Level.WARNING, ex.getMessage(), ex);
+            }
+        });
+    }
+
+    /**
+     * runs the save on the save executor after the previous saves of this
+     * player
+     *
+     * @param playerUuid
+     * @param runnable
+     * @return
+     */
+    private CompletableFuture<Void> runAfterPendingSaves(UUID playerUuid, Runnable runnable) {
+
+        CompletableFuture<Void> save = this.pendingSaves.compute(playerUuid, (uuid, previous) -> (previous != null
+                ? previous.exceptionally(ex -> null)
+                : CompletableFuture.<Void>completedFuture(null)
+        ).thenRunAsync(runnable, this.saveExecutor));
+
+        // forget the save when it is done
+        save.whenComplete((result, ex) -> this.pendingSaves.remove(playerUuid, save));
+
+        return save;
+    }
+
+    /**
+     * reads the metadata of the player into a new model
+     *
+     * @param player
+     * @return
+     */
+    private PlayerMetadata readPlayerMetadata(Player player) {
+
+        PlayerMetadata playerMetadata = new PlayerMetadata(player.getUniqueId(), this.configuration.getBranchName());
+
         // now set all data
         if (this.configuration.isHealthEnabled()) {
             
@@ -232,8 +409,170 @@ public class MetadataModule extends AbstractModule<MetadataConfiguration> {
             playerMetadata.setHoldItemSlot(player.getInventory().getHeldItemSlot());
         }
 
-        // save to database
-        this.repository.store(playerMetadata);
+        return playerMetadata;
+    }
+
+    /**
+     * copies the synced metadata of the read state into the model
+     *
+     * @param state
+     * @param playerMetadata
+     */
+    private void copyPlayerMetadata(PlayerMetadata state, PlayerMetadata playerMetadata) {
+
+        if (this.configuration.isHealthEnabled()) {
+
+            playerMetadata.setHealth(state.getHealth());
+            playerMetadata.setHealthScale(state.getHealthScale());
+        }
+
+        if (this.configuration.isXpEnabled()) {
+
+            playerMetadata.setLevel(state.getLevel());
+            playerMetadata.setXp(state.getXp());
+        }
+
+        if (this.configuration.isFoodEnabled()) {
+
+            playerMetadata.setFood(state.getFood());
+            playerMetadata.setSaturation(state.getSaturation());
+            playerMetadata.setExhaustion(state.getExhaustion());
+        }
+
+        if (this.configuration.isGamemodeEnabled()) {
+
+            playerMetadata.setGamemode(state.getGamemode());
+        }
+
+        if (this.configuration.isFlightEnabled()) {
+
+            playerMetadata.setFlight(state.isFlight());
+        }
+
+        if (this.configuration.isPotionEffectEnabled()) {
+
+            playerMetadata.setPotionEffects(state.getPotionEffects());
+        }
+
+        if (this.configuration.isFireEnabled()) {
+
+            playerMetadata.setFireTicks(state.getFireTicks());
+        }
+
+        if (this.configuration.isAirEnabled()) {
+
+            playerMetadata.setAir(state.getAir());
+        }
+
+        if (this.configuration.isCurrentHoldItemEnabled()) {
+
+            playerMetadata.setHoldItemSlot(state.getHoldItemSlot());
+        }
+    }
+
+    /**
+     * stores the read state into the model, only the changed attributes will
+     * be written. if another server has saved the metadata in the meantime,
+     * the stored metadata will be loaded again instead.
+     *
+     * @param playerMetadata
+     * @param state
+     * @param release release the claim of this server, eg. on quit
+     */
+    private void storePlayerMetadata(PlayerMetadata playerMetadata, PlayerMetadata state, boolean release) {
+
+        synchronized (playerMetadata) {
+
+            // other servers wait for the release
+            this.copyPlayerMetadata(state, playerMetadata);
+            if (release) {
+
+                this.serverClaim.release(playerMetadata);
+            } else {
+
+                this.serverClaim.claim(playerMetadata);
+            }
+
+            // save to database. the metadata of another server is never
+            // overwritten
+            StoreResult result = this.repository.store(playerMetadata);
+            if (result == StoreResult.CONFLICT) {
+
+                this.reloadPlayerMetadata(playerMetadata, release);
+            } else if (result == StoreResult.FAILED) {
+
+                Main.log.warning("Could not save the metadata of player " + playerMetadata.getUuid() + ". Retrying with the next save.");
+            }
+        }
+    }
+
+    /**
+     * loads metadata that has been saved by another server in the meantime
+     * again and applies it to the player if the player is still online here.
+     * the state of this server is not written.
+     *
+     * @param playerMetadata
+     * @param release the player has left this server
+     */
+    private void reloadPlayerMetadata(PlayerMetadata playerMetadata, boolean release) {
+
+        UUID playerUuid = playerMetadata.getUuid();
+        Main.log.warning("The metadata of player " + playerUuid + " has been saved by another server in the meantime. The stored metadata will be loaded again.");
+
+        if (!this.repository.refresh(playerMetadata)) {
+
+            Main.log.warning("Could not load the metadata of player " + playerUuid + " again.");
+            return;
+        }
+
+        if (release) {
+            return;
+        }
+
+        // the player must not be saved until the stored metadata is set
+        this.loadingPlayers.add(playerUuid);
+        this.createSyncTask(() -> {
+
+            this.loadingPlayers.remove(playerUuid);
+
+            Player player = this.plugin.getServer().getPlayer(playerUuid);
+            if (player == null) {
+                return;
+            }
+
+            synchronized (playerMetadata) {
+
+                this.setPlayerMetadata(player, playerMetadata);
+            }
+        });
+    }
+
+    /**
+     * stores the claim of this server without the metadata. metadata that is
+     * not stored yet will be inserted. a claim this server holds allready
+     * will not be written again.
+     *
+     * @param playerMetadata
+     */
+    private void storeClaim(PlayerMetadata playerMetadata) {
+
+        synchronized (playerMetadata) {
+
+            this.serverClaim.claim(playerMetadata);
+            StoreResult result = this.repository.store(playerMetadata);
+
+            // eg. claimed by a server that did not release it in time
+            if (result == StoreResult.CONFLICT && this.repository.refresh(playerMetadata)) {
+
+                this.serverClaim.claim(playerMetadata);
+                result = this.repository.store(playerMetadata);
+            }
+
+            if (result != StoreResult.STORED) {
+
+                Main.log.warning("Could not store the claim of the metadata of player " + playerMetadata.getUuid());
+            }
+        }
     }
     
 }
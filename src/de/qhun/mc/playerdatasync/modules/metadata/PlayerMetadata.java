@@ -18,10 +18,13 @@ package de.qhun.mc.playerdatasync.modules.metadata;
 
 import de.qhun.mc.playerdatasync.database.decorators.Column;
 import de.qhun.mc.playerdatasync.database.decorators.ColumnType;
+import de.qhun.mc.playerdatasync.database.decorators.Compressed;
 import de.qhun.mc.playerdatasync.database.decorators.Entity;
 import de.qhun.mc.playerdatasync.database.decorators.NotNull;
 import de.qhun.mc.playerdatasync.database.decorators.Primary;
 import de.qhun.mc.playerdatasync.database.decorators.Table;
+import de.qhun.mc.playerdatasync.database.decorators.Version;
+import de.qhun.mc.playerdatasync.modules.ClaimedEntity;
 import java.util.List;
 import java.util.UUID;
 import org.bukkit.potion.PotionEffect;
@@ -34,7 +37,7 @@ import org.bukkit.GameMode;
  */
 @Entity
 @Table
-public class PlayerMetadata {
+public class PlayerMetadata implements ClaimedEntity {
 
     @Primary(index = 0)
     @Column(size = 36)
@@ -73,8 +76,9 @@ public class PlayerMetadata {
     @Column(type = ColumnType.Boolean)
     private boolean flight;
 
-    @Column(type = ColumnType.Text)
-    private String potionEffects;
+    @Column(type = ColumnType.Object)
+    @Compressed
+    private byte[] potionEffects;
 
     @Column(type = ColumnType.Integer)
     private int fireTicks;
@@ -85,6 +89,21 @@ public class PlayerMetadata {
     @Column(type = ColumnType.Integer)
     private int holdItemSlot;
 
+    @Column(type = ColumnType.Long)
+    @Version
+    @NotNull
+    private long version;
+
+    // the server the player is online on, null if the player has been saved
+    // on quit
+    @Column(size = 36)
+    private String claimedBy;
+
+    // the claim expires at this time in milliseconds
+    @Column(type = ColumnType.Long)
+    @NotNull
+    private long claimedUntil;
+
     protected PlayerMetadata() {
     }
 
@@ -244,6 +263,51 @@ public class PlayerMetadata {
         return holdItemSlot;
     }
 
+    /**
+     * get the version of the stored row
+     *
+     * @return
+     */
+    public long getVersion() {
+
+        return this.version;
+    }
+
+    /**
+     * get the id of the server that claims the entity
+     *
+     * @return
+     */
+    @Override
+    public String getClaimedBy() {
+
+        return this.claimedBy;
+    }
+
+    /**
+     * get the time in milliseconds the claim expires at
+     *
+     * @return
+     */
+    @Override
+    public long getClaimedUntil() {
+
+        return this.claimedUntil;
+    }
+
+    /**
+     * claims or releases the entity
+     *
+     * @param claimedBy
+     * @param claimedUntil
+     */
+    @Override
+    public void setClaim(String claimedBy, long claimedUntil) {
+
+        this.claimedBy = claimedBy;
+        this.claimedUntil = claimedUntil;
+    }
+
     /**
      * set the current health
      *
@@ -16,71 +16,253 @@
  */
 package de.qhun.mc.playerdatasync.modules.metadata;
 
+import de.qhun.mc.playerdatasync.util.VarInt;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.codec.binary.Base64;
 import org.bukkit.util.io.BukkitObjectInputStream;
-import org.bukkit.util.io.BukkitObjectOutputStream;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 import org.bukkit.Color;
 
 /**
- * a class that can serialize potion effects
+ * a class that can serialize potion effects into a compact binary format.
+ *
+ * layout: magic, version, effect count, then one record per effect: type id
+ * (1 byte, followed by the type name if the id is 0), duration (4 bytes),
+ * amplifier (variable length), flags (1 byte) and the packed rgb color (3
+ * bytes) if the color flag is set.
  *
  * @author Wrath
  */
 public class PotionEffectSerializer {
 
+    // the first byte of the binary format. it is not part of the base64
+    // alphabet, so legacy values can be detected safely
+    private static final byte MAGIC = (byte) 0xB2;
+
+    // the current version of the format
+    private static final byte VERSION = 2;
+
+    // the record flags
+    private static final int FLAG_AMBIENT = 1;
+    private static final int FLAG_PARTICLES = 1 << 1;
+    private static final int FLAG_COLOR = 1 << 2;
+
+    // the largest record without a type name: type id, duration, amplifier,
+    // flags and color
+    private static final int MAX_RECORD_SIZE = 14;
+
+    // the type names by their stored id. the id is the index, 0 means that
+    // the name follows. new types must be appended, ids are never reused!
+    private static final String[] TYPE_NAMES = new String[]{
+        null, "SPEED", "SLOW", "FAST_DIGGING", "SLOW_DIGGING", "INCREASE_DAMAGE", "HEAL", "HARM", "JUMP",
+        "CONFUSION", "REGENERATION", "DAMAGE_RESISTANCE", "FIRE_RESISTANCE", "WATER_BREATHING",
+        "INVISIBILITY", "BLINDNESS", "NIGHT_VISION", "HUNGER", "WEAKNESS", "POISON", "WITHER",
+        "HEALTH_BOOST", "ABSORPTION", "SATURATION", "GLOWING", "LEVITATION", "LUCK", "UNLUCK"
+    };
+
+    // the stored ids by type name
+    private static final Map<String, Integer> TYPE_IDS = new HashMap<>();
+
+    static {
+
+        for (int i = 1; i < TYPE_NAMES.length; i++) {
+
+            TYPE_IDS.put(TYPE_NAMES[i], i);
+        }
+    }
+
+    // the encode buffer of every thread
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
     /**
-     * serializes the given potion effects into a base64 string
+     * serializes the given potion effects
      *
      * @param effects
      * @return
      */
-    public static String serialize(List<PotionEffect> effects) {
+    public static byte[] serialize(List<PotionEffect> effects) {
+
+        // effects without a type can not be restored, types without an id
+        // need space for their name
+        int count = 0;
+        int required = 2 + 5;
+        for (PotionEffect effect : effects) {
+
+            if (effect.getType() != null) {
+
+                count++;
+                required += MAX_RECORD_SIZE;
+                if (!TYPE_IDS.containsKey(effect.getType().getName())) {
+
+                    required += 5 + effect.getType().getName().getBytes(StandardCharsets.UTF_8).length;
+                }
+            }
+        }
+
+        // reuse the buffer of this thread if it is large enough
+        ByteBuffer buffer = PotionEffectSerializer.buffers.get();
+        if (buffer.capacity() < required) {
+
+            buffer = ByteBuffer.allocate(required);
+            PotionEffectSerializer.buffers.set(buffer);
+        }
+        buffer.clear();
+
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        VarInt.write(buffer, count);
+
+        for (PotionEffect effect : effects) {
+
+            if (effect.getType() == null) {
+                continue;
+            }
+
+            Color color = effect.getColor();
+            int flags = (effect.isAmbient() ? FLAG_AMBIENT : 0)
+                    | (effect.hasParticles() ? FLAG_PARTICLES : 0)
+                    | (color != null ? FLAG_COLOR : 0);
+
+            // the id of the type or its name
+            String typeName = effect.getType().getName();
+            Integer typeId = TYPE_IDS.get(typeName);
+            if (typeId != null) {
+
+                buffer.put(typeId.byteValue());
+            } else {
+
+                byte[] name = typeName.getBytes(StandardCharsets.UTF_8);
+                buffer.put((byte) 0);
+                VarInt.write(buffer, name.length);
+                buffer.put(name);
+            }
+
+            // the amplifier keeps its full range
+            buffer.putInt(effect.getDuration());
+            VarInt.write(buffer, effect.getAmplifier());
+            buffer.put((byte) flags);
+
+            // packed rgb
+            if (color != null) {
+
+                int rgb = color.asRGB();
+                buffer.put((byte) (rgb >>> 16));
+                buffer.put((byte) (rgb >>> 8));
+                buffer.put((byte) rgb);
+            }
+        }
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * deserialize a list of effects. the format is detected automatically.
+     *
+     * @param serializedEffectList
+     * @return
+     */
+    public static List<PotionEffect> deserialize(byte[] serializedEffectList) {
+
+        if (serializedEffectList == null) {
+
+            return new ArrayList<>();
+        }
+
+        // a base64 string of an older version
+        if (serializedEffectList.length < 2 || serializedEffectList[0] != MAGIC) {
+
+            return PotionEffectSerializer.deserializeLegacy(
+                    new String(serializedEffectList, StandardCharsets.US_ASCII)
+            );
+        }
+
+        // create an empty list
+        List<PotionEffect> effects = new ArrayList<>();
+
+        // an unknown version of a newer plugin
+        if (serializedEffectList[1] != VERSION) {
+
+            return effects;
+        }
 
         try {
-            // prepare serialisation
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            BukkitObjectOutputStream objectStream = new BukkitObjectOutputStream(outputStream);
-
-            // write the number of effects to the stream to allow
-            // easier deserilisation
-            objectStream.writeInt(effects.size());
-
-            // every effect should be put into the output stream
-            for (PotionEffect effect : effects) {
-
-                // write each important type
-                objectStream.writeObject(effect.getType().getName());
-                objectStream.writeInt(effect.getDuration());
-                objectStream.writeInt(effect.getAmplifier());
-                objectStream.writeBoolean(effect.isAmbient());
-                objectStream.writeBoolean(effect.hasParticles());
-                objectStream.writeObject(effect.getColor());
+
+            // read the values directly from the stored bytes
+            ByteBuffer buffer = ByteBuffer.wrap(serializedEffectList, 2, serializedEffectList.length - 2);
+
+            int effectAmount = VarInt.read(buffer);
+            for (int i = 0; i < effectAmount; i++) {
+
+                PotionEffectType type = PotionEffectSerializer.readType(buffer);
+                int duration = buffer.getInt();
+                int amplifier = VarInt.read(buffer);
+                int flags = buffer.get();
+
+                Color color = null;
+                if ((flags & FLAG_COLOR) != 0) {
+
+                    color = Color.fromRGB(((buffer.get() & 0xFF) << 16) | ((buffer.get() & 0xFF) << 8) | (buffer.get() & 0xFF));
+                }
+
+                // the effect might not exist on this server version
+                if (type == null) {
+                    continue;
+                }
+
+                effects.add(new PotionEffect(
+                        type, duration, amplifier,
+                        (flags & FLAG_AMBIENT) != 0,
+                        (flags & FLAG_PARTICLES) != 0,
+                        color
+                ));
             }
 
-            // close the stream and convert to base64
-            objectStream.close();
-            return Base64.encodeBase64String(outputStream.toByteArray());
+        } catch (BufferUnderflowException | IOException ex) {
 
-        } catch (Exception ex) {
+            // data is corrupt... keep the effects that could be read
+        }
 
-            return "serialize error";
+        return effects;
+    }
+
+    /**
+     * reads the type id or the type name of one record
+     *
+     * @param buffer
+     * @return null if the type does not exist on this server
+     * @throws IOException
+     */
+    private static PotionEffectType readType(ByteBuffer buffer) throws IOException {
+
+        int typeId = buffer.get() & 0xFF;
+        if (typeId != 0) {
+
+            return typeId < TYPE_NAMES.length ? PotionEffectType.getByName(TYPE_NAMES[typeId]) : null;
         }
+
+        byte[] name = new byte[VarInt.read(buffer)];
+        buffer.get(name);
+
+        return PotionEffectType.getByName(new String(name, StandardCharsets.UTF_8));
     }
 
     /**
-     * deserialize a list of effects from a base64 string
+     * deserialize a list of effects from a base64 string of the legacy format
      *
      * @param base64SerializedEffectList
      * @return
      */
-    public static List<PotionEffect> deserialize(String base64SerializedEffectList) {
+    private static List<PotionEffect> deserializeLegacy(String base64SerializedEffectList) {
 
         // create an empty list
         List<PotionEffect> effects = new ArrayList<>();
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 Wrath
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.qhun.mc.playerdatasync.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * reads and writes integers with a variable length of one to five bytes.
+ * small numbers use less bytes.
+ *
+ * @author Wrath
+ */
+public class VarInt {
+
+    /**
+     * writes the given number, seven bits per byte
+     *
+     * @param output
+     * @param value
+     * @throws IOException
+     */
+    public static void write(DataOutput output, int value) throws IOException {
+
+        while ((value & ~0x7F) != 0) {
+
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        output.writeByte(value);
+    }
+
+    /**
+     * reads a number that has been written by write()
+     *
+     * @param input
+     * @return
+     * @throws IOException
+     */
+    public static int read(DataInput input) throws IOException {
+
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+
+            int current = input.readUnsignedByte();
+            value |= (current & 0x7F) << shift;
+
+            // the highest bit marks a following byte
+            if ((current & 0x80) == 0) {
+
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * writes the given number into the buffer
+     *
+     * @param buffer
+     * @param value
+     */
+    public static void write(ByteBuffer buffer, int value) {
+
+        while ((value & ~0x7F) != 0) {
+
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    /**
+     * reads a number from the buffer
+     *
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    public static int read(ByteBuffer buffer) throws IOException {
+
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+
+            int current = buffer.get() & 0xFF;
+            value |= (current & 0x7F) << shift;
+
+            // the highest bit marks a following byte
+            if ((current & 0x80) == 0) {
+
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable length integer");
+    }
+}